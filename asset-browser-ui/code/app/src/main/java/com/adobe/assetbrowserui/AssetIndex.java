@@ -0,0 +1,402 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.assetbrowserui;
+
+import android.content.Context;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import com.adobe.creativesdk.foundation.storage.AdobePhotoAsset;
+import com.adobe.creativesdk.foundation.storage.AdobePhotoCollection;
+
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A local index of Lightroom asset metadata, grouped by collection in listing order.
+ *
+ * The index is kept in a small versioned binary file in the app's files directory, so it can be
+ * read back at startup before any listing has been made. {@link AssetIndexSync} reconciles it with
+ * the server in the background, one collection at a time, and only rewrites what changed.
+ *
+ * The SDK objects behind the entries can't be persisted, so the ones seen this session are kept
+ * alongside for callers that need to download something.
+ */
+public class AssetIndex {
+
+    private static final String TAG = AssetIndex.class.getSimpleName();
+
+    private static final String INDEX_FILE_NAME = "asset-index.bin";
+    private static final int FILE_MAGIC = 0x41494458; // "AIDX"
+    private static final int FILE_VERSION = 1;
+
+    public static class Entry {
+        public final String guid;
+        public final String name;
+        public final long modificationStamp;
+        public final List<String> renditionKeys;
+
+        /* 0 when the asset's metadata doesn't carry them */
+        public final int width;
+        public final int height;
+
+        Entry(String guid, String name, long modificationStamp, List<String> renditionKeys, int width, int height) {
+            this.guid = guid;
+            this.name = name;
+            this.modificationStamp = modificationStamp;
+            this.renditionKeys = renditionKeys;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private static class Collection {
+        final String guid;
+        final String name;
+        final long modificationStamp;
+        final List<Entry> entries;
+
+        Collection(String guid, String name, long modificationStamp, List<Entry> entries) {
+            this.guid = guid;
+            this.name = name;
+            this.modificationStamp = modificationStamp;
+            this.entries = entries;
+        }
+    }
+
+    private static AssetIndex sSharedInstance;
+
+    private final File mIndexFile;
+    private final Object mSaveLock = new Object();
+
+    /* Collections in listing order, keyed by GUID */
+    private final Map<String, Collection> mCollections = new LinkedHashMap<>();
+
+    /* Asset GUID to the GUID of the collection it was last listed in */
+    private final Map<String, String> mCollectionOfAsset = new HashMap<>();
+
+    private final Map<String, AdobePhotoAsset> mLiveAssets = new HashMap<>();
+    private boolean mLoaded;
+
+    public static synchronized AssetIndex getSharedInstance(Context context) {
+        if (sSharedInstance == null) {
+            sSharedInstance = new AssetIndex(new File(context.getApplicationContext().getFilesDir(), INDEX_FILE_NAME));
+        }
+        return sSharedInstance;
+    }
+
+    AssetIndex(File indexFile) {
+        mIndexFile = indexFile;
+    }
+
+    /**
+     * Reads the index file, once. Later calls return straight away.
+     */
+    @WorkerThread
+    public synchronized void load() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+
+        if (!mIndexFile.isFile()) {
+            return;
+        }
+
+        DataInputStream inputStream = null;
+        try {
+            inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(mIndexFile)));
+            if (inputStream.readInt() != FILE_MAGIC || inputStream.readInt() != FILE_VERSION) {
+                Log.w(TAG, "Ignoring index in an unknown format");
+                return;
+            }
+
+            int collectionCount = inputStream.readInt();
+            for (int i = 0; i < collectionCount; i++) {
+                String collectionGuid = inputStream.readUTF();
+                String collectionName = inputStream.readUTF();
+                long collectionStamp = inputStream.readLong();
+
+                int entryCount = inputStream.readInt();
+                List<Entry> entries = new ArrayList<>(entryCount);
+                for (int j = 0; j < entryCount; j++) {
+                    String guid = inputStream.readUTF();
+                    String name = inputStream.readUTF();
+                    long modificationStamp = inputStream.readLong();
+                    int width = inputStream.readInt();
+                    int height = inputStream.readInt();
+
+                    int renditionCount = inputStream.readUnsignedByte();
+                    List<String> renditionKeys = new ArrayList<>(renditionCount);
+                    for (int k = 0; k < renditionCount; k++) {
+                        renditionKeys.add(inputStream.readUTF());
+                    }
+
+                    entries.add(new Entry(guid, name, modificationStamp, Collections.unmodifiableList(renditionKeys), width, height));
+                }
+
+                putCollection(new Collection(collectionGuid, collectionName, collectionStamp, entries));
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading asset index: " + e.getMessage());
+            mCollections.clear();
+            mCollectionOfAsset.clear();
+        } finally {
+            FileUtils.closeQuietly(inputStream);
+        }
+    }
+
+    public synchronized Entry getEntry(String assetGuid) {
+        String collectionGuid = mCollectionOfAsset.get(assetGuid);
+        Collection collection = collectionGuid != null ? mCollections.get(collectionGuid) : null;
+        if (collection == null) {
+            return null;
+        }
+        for (Entry entry : collection.entries) {
+            if (entry.guid.equals(assetGuid)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the GUID of the collection an asset was last listed in, or null.
+     */
+    public synchronized String getCollectionGuid(String assetGuid) {
+        return mCollectionOfAsset.get(assetGuid);
+    }
+
+    /**
+     * @return the entries of a collection in listing order, or an empty list if it isn't indexed.
+     */
+    public synchronized List<Entry> getEntries(String collectionGuid) {
+        Collection collection = mCollections.get(collectionGuid);
+        return collection != null ? collection.entries : Collections.<Entry>emptyList();
+    }
+
+    /**
+     * @return whether a collection is indexed as of the given modification date.
+     */
+    public synchronized boolean isCurrent(AdobePhotoCollection photoCollection) {
+        Collection collection = mCollections.get(photoCollection.getGUID());
+        return collection != null && collection.modificationStamp == stampOf(photoCollection.getModificationDate());
+    }
+
+    /**
+     * @return the SDK object for an asset, if one was seen this session.
+     */
+    public synchronized AdobePhotoAsset getLiveAsset(String assetGuid) {
+        return mLiveAssets.get(assetGuid);
+    }
+
+    public synchronized void rememberLiveAsset(AdobePhotoAsset photoAsset) {
+        mLiveAssets.put(photoAsset.getGUID(), photoAsset);
+    }
+
+    /**
+     * Replaces the indexed contents of a collection with a fresh listing. Entries for assets that
+     * haven't changed are kept as they are.
+     *
+     * @return whether anything in the collection changed.
+     */
+    public synchronized boolean updateCollection(AdobePhotoCollection photoCollection, List<AdobePhotoAsset> photoAssets) {
+        Collection previous = mCollections.get(photoCollection.getGUID());
+        Map<String, Entry> previousEntries = new HashMap<>();
+        if (previous != null) {
+            for (Entry entry : previous.entries) {
+                previousEntries.put(entry.guid, entry);
+            }
+        }
+
+        boolean changed = previous == null || previous.entries.size() != photoAssets.size();
+        List<Entry> entries = new ArrayList<>(photoAssets.size());
+
+        for (int i = 0; i < photoAssets.size(); i++) {
+            AdobePhotoAsset photoAsset = photoAssets.get(i);
+            mLiveAssets.put(photoAsset.getGUID(), photoAsset);
+
+            Entry entry = previousEntries.get(photoAsset.getGUID());
+            if (entry == null || entry.modificationStamp != stampOf(photoAsset.getModificationDate())) {
+                entry = entryFor(photoAsset);
+                changed = true;
+            } else if (!changed && previous.entries.get(i) != entry) {
+                changed = true; // Same assets, new order
+            }
+            entries.add(entry);
+        }
+
+        long collectionStamp = stampOf(photoCollection.getModificationDate());
+        changed |= previous == null || previous.modificationStamp != collectionStamp;
+
+        if (previous != null) {
+            removeCollection(previous.guid);
+        }
+        putCollection(new Collection(photoCollection.getGUID(), nonNull(photoCollection.getName()), collectionStamp, entries));
+
+        return changed;
+    }
+
+    /**
+     * Drops every collection that isn't in {@code collectionGuids}.
+     *
+     * @return whether anything was dropped.
+     */
+    public synchronized boolean retainCollections(Set<String> collectionGuids) {
+        List<String> removed = new ArrayList<>();
+        for (String collectionGuid : mCollections.keySet()) {
+            if (!collectionGuids.contains(collectionGuid)) {
+                removed.add(collectionGuid);
+            }
+        }
+        for (String collectionGuid : removed) {
+            removeCollection(collectionGuid);
+        }
+        return !removed.isEmpty();
+    }
+
+    /**
+     * Writes the index file.
+     */
+    @WorkerThread
+    public void save() {
+        /* Collections are replaced rather than changed, so a snapshot can be written unlocked */
+        List<Collection> collections;
+        synchronized (this) {
+            collections = new ArrayList<>(mCollections.values());
+        }
+
+        synchronized (mSaveLock) {
+            write(collections);
+        }
+    }
+
+    private void write(final List<Collection> collections) {
+        File parent = mIndexFile.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            Log.e(TAG, "Unable to create " + parent);
+            return;
+        }
+
+        try {
+            FileUtils.writeAtomically(mIndexFile, new FileUtils.StreamWriter() {
+                @Override
+                public void writeTo(OutputStream outputStream) throws IOException {
+                    writeCollections(collections, new DataOutputStream(new BufferedOutputStream(outputStream)));
+                }
+            });
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing asset index: " + e.getMessage());
+        }
+    }
+
+    private static void writeCollections(List<Collection> collections, DataOutputStream outputStream) throws IOException {
+        outputStream.writeInt(FILE_MAGIC);
+        outputStream.writeInt(FILE_VERSION);
+
+        outputStream.writeInt(collections.size());
+        for (Collection collection : collections) {
+            outputStream.writeUTF(collection.guid);
+            outputStream.writeUTF(collection.name);
+            outputStream.writeLong(collection.modificationStamp);
+
+            outputStream.writeInt(collection.entries.size());
+            for (Entry entry : collection.entries) {
+                outputStream.writeUTF(entry.guid);
+                outputStream.writeUTF(entry.name);
+                outputStream.writeLong(entry.modificationStamp);
+                outputStream.writeInt(entry.width);
+                outputStream.writeInt(entry.height);
+
+                outputStream.writeByte(entry.renditionKeys.size());
+                for (String renditionKey : entry.renditionKeys) {
+                    outputStream.writeUTF(renditionKey);
+                }
+            }
+        }
+        outputStream.flush();
+    }
+
+    private void putCollection(Collection collection) {
+        mCollections.put(collection.guid, collection);
+        for (Entry entry : collection.entries) {
+            mCollectionOfAsset.put(entry.guid, collection.guid);
+        }
+    }
+
+    private void removeCollection(String collectionGuid) {
+        mCollections.remove(collectionGuid);
+
+        Iterator<Map.Entry<String, String>> iterator = mCollectionOfAsset.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getValue().equals(collectionGuid)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static Entry entryFor(AdobePhotoAsset photoAsset) {
+        List<String> renditionKeys = new ArrayList<>();
+        if (photoAsset.getRenditions() != null) {
+            renditionKeys.addAll(photoAsset.getRenditions().keySet());
+        }
+
+        int width = 0;
+        int height = 0;
+        JSONObject metadata = photoAsset.getMetadata();
+        if (metadata != null) {
+            width = metadata.optInt("width", 0);
+            height = metadata.optInt("height", 0);
+        }
+
+        return new Entry(photoAsset.getGUID(), nonNull(photoAsset.getName()), stampOf(photoAsset.getModificationDate()),
+                Collections.unmodifiableList(renditionKeys), width, height);
+    }
+
+    private static long stampOf(Date date) {
+        return date != null ? date.getTime() : 0;
+    }
+
+    private static String nonNull(String value) {
+        return value != null ? value : "";
+    }
+}
@@ -0,0 +1,317 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.assetbrowserui;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.adobe.creativesdk.foundation.IAdobeGenericCompletionCallback;
+import com.adobe.creativesdk.foundation.IAdobeGenericErrorCallback;
+import com.adobe.creativesdk.foundation.internal.utils.AdobeCSDKException;
+import com.adobe.creativesdk.foundation.storage.AdobePhotoAsset;
+import com.adobe.creativesdk.foundation.storage.AdobePhotoCatalog;
+import com.adobe.creativesdk.foundation.storage.AdobePhotoCollection;
+import com.adobe.creativesdk.foundation.storage.AdobePhotoPage;
+import com.adobe.creativesdk.foundation.storage.IAdobePhotoAssetsListRequestCompletionHandler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reconciles an {@link AssetIndex} with the Lightroom catalogs in the background.
+ *
+ * There is one for the whole app, so a sync outlives the screen that started it. The index can
+ * be read from disk with {@link #loadIndex} as soon as a screen is created, before anyone has
+ * signed in, and a sync reads it first too. Collections are then listed
+ * and walked one at a time; a collection whose modification date matches the index is skipped
+ * without listing its assets. Collections that no longer exist are dropped, and the index file is
+ * only rewritten when something changed.
+ */
+public class AssetIndexSync {
+
+    private static final String TAG = AssetIndexSync.class.getSimpleName();
+
+    private static final long MIN_SYNC_INTERVAL_MILLIS = 5 * 60 * 1000;
+    private static final int COLLECTION_PAGE_LIMIT = 100;
+    private static final int ASSET_PAGE_LIMIT = 500;
+
+    public interface Listener {
+        void onSyncComplete(boolean changed);
+    }
+
+    public interface LoadListener {
+        void onIndexLoaded();
+    }
+
+    private static AssetIndexSync sSharedInstance;
+
+    private final AssetIndex mAssetIndex;
+    private final ExecutorService mDiskExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private boolean mSyncing;
+    private long mLastSyncUptime = -MIN_SYNC_INTERVAL_MILLIS;
+
+    /* State of the sync in progress */
+    private Listener mListener;
+    private final LinkedList<AdobePhotoCollection> mPendingCollections = new LinkedList<>();
+    private final Set<String> mSeenCollectionGuids = new HashSet<>();
+    private boolean mChanged;
+
+    /* Every collection listed this session, so single collections can be refreshed later */
+    private final Map<String, AdobePhotoCollection> mListedCollections = new HashMap<>();
+
+    public static synchronized AssetIndexSync getSharedInstance(Context context) {
+        if (sSharedInstance == null) {
+            sSharedInstance = new AssetIndexSync(AssetIndex.getSharedInstance(context));
+        }
+        return sSharedInstance;
+    }
+
+    AssetIndexSync(AssetIndex assetIndex) {
+        mAssetIndex = assetIndex;
+    }
+
+    /**
+     * Reads the index from disk off the main thread, if it hasn't been already, then calls
+     * {@code listener} on the main thread.
+     */
+    public void loadIndex(final LoadListener listener) {
+        mDiskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mAssetIndex.load();
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onIndexLoaded();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Starts a sync unless one is running or the last one finished a moment ago. Call it on the
+     * main thread; the listener is called there too.
+     */
+    public void sync(Listener listener) {
+        if (mSyncing || SystemClock.uptimeMillis() - mLastSyncUptime < MIN_SYNC_INTERVAL_MILLIS) {
+            return;
+        }
+        mSyncing = true;
+        mListener = listener;
+        mPendingCollections.clear();
+        mSeenCollectionGuids.clear();
+        mChanged = false;
+
+        /* 1) Make sure the index on disk is loaded before anything is merged into it */
+        mDiskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mAssetIndex.load();
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listCatalogs();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Lists the assets of one collection that a sync has seen this session, so their SDK objects
+     * are at hand even if the sync skipped it as unchanged. Call it on the main thread.
+     *
+     * @return false if the collection hasn't been seen this session.
+     */
+    public boolean refreshCollection(String collectionGuid, final Listener listener) {
+        AdobePhotoCollection collection = mListedCollections.get(collectionGuid);
+        if (collection == null) {
+            return false;
+        }
+
+        listAssets(collection, null, new ArrayList<AdobePhotoAsset>(), new Listener() {
+            @Override
+            public void onSyncComplete(boolean changed) {
+                if (changed) {
+                    saveInBackground();
+                }
+                listener.onSyncComplete(changed);
+            }
+        }, new IAdobeGenericErrorCallback<AdobeCSDKException>() {
+            @Override
+            public void onError(AdobeCSDKException e) {
+                Log.e(TAG, "Error refreshing collection: " + e.getMessage());
+                listener.onSyncComplete(false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Stops a sync in progress from reporting to {@code listener}, such as when its screen is
+     * destroyed. The sync itself carries on.
+     */
+    public void removeListener(Listener listener) {
+        if (mListener == listener) {
+            mListener = null;
+        }
+    }
+
+    private void listCatalogs() {
+        AdobePhotoCatalog.listCatalogOfType(AdobePhotoCatalog.AdobePhotoCatalogType.AdobePhotoCatalogTypeLightroom,
+                new IAdobeGenericCompletionCallback<ArrayList<AdobePhotoCatalog>>() {
+                    @Override
+                    public void onCompletion(ArrayList<AdobePhotoCatalog> catalogs) {
+                        listCollections(new LinkedList<>(catalogs), null);
+                    }
+                }, mErrorCallback);
+    }
+
+    /**
+     * Lists the collections of the first catalog in {@code catalogs} a page at a time, then moves
+     * on to the next catalog.
+     */
+    private void listCollections(final LinkedList<AdobePhotoCatalog> catalogs, String afterName) {
+        if (catalogs.isEmpty()) {
+            syncNextCollection();
+            return;
+        }
+
+        catalogs.getFirst().listCollectionsAfterName(afterName, COLLECTION_PAGE_LIMIT, false,
+                new IAdobeGenericCompletionCallback<ArrayList<AdobePhotoCollection>>() {
+                    @Override
+                    public void onCompletion(ArrayList<AdobePhotoCollection> collections) {
+                        String lastName = null;
+                        for (AdobePhotoCollection collection : collections) {
+                            /* Pages can overlap where names repeat */
+                            if (mSeenCollectionGuids.add(collection.getGUID())) {
+                                mPendingCollections.add(collection);
+                                mListedCollections.put(collection.getGUID(), collection);
+                            }
+                            lastName = collection.getName();
+                        }
+
+                        if (collections.size() < COLLECTION_PAGE_LIMIT || lastName == null) {
+                            catalogs.removeFirst();
+                            lastName = null;
+                        }
+                        listCollections(catalogs, lastName);
+                    }
+                }, mErrorCallback);
+    }
+
+    private void syncNextCollection() {
+        while (!mPendingCollections.isEmpty() && mAssetIndex.isCurrent(mPendingCollections.getFirst())) {
+            mPendingCollections.removeFirst(); // Unchanged since the last sync
+        }
+
+        if (mPendingCollections.isEmpty()) {
+            mChanged |= mAssetIndex.retainCollections(mSeenCollectionGuids);
+            finish(true);
+            return;
+        }
+
+        listAssets(mPendingCollections.removeFirst(), null, new ArrayList<AdobePhotoAsset>(), new Listener() {
+            @Override
+            public void onSyncComplete(boolean changed) {
+                mChanged |= changed;
+                syncNextCollection();
+            }
+        }, mErrorCallback);
+    }
+
+    /**
+     * Lists every page of a collection, merges it into the index, then tells {@code listener}
+     * whether that changed anything.
+     */
+    private void listAssets(final AdobePhotoCollection collection, AdobePhotoPage page, final List<AdobePhotoAsset> photoAssets,
+                            final Listener listener, final IAdobeGenericErrorCallback<AdobeCSDKException> errorCallback) {
+        collection.listAssetsOnPage(page, AdobePhotoCollection.AdobePhotoCollectionSort.ADOBE_PHOTO_COLLECTION_SORT_BY_DATE,
+                ASSET_PAGE_LIMIT, AdobePhotoCollection.AdobePhotoCollectionFlag.ADOBE_PHOTO_COLLECTION_FLAG_ALL,
+                new IAdobePhotoAssetsListRequestCompletionHandler() {
+                    @Override
+                    public void onCompletion(ArrayList<AdobePhotoAsset> assets, AdobePhotoPage previousPage, AdobePhotoPage nextPage) {
+                        photoAssets.addAll(assets);
+
+                        if (nextPage != null && !assets.isEmpty()) {
+                            listAssets(collection, nextPage, photoAssets, listener, errorCallback);
+                            return;
+                        }
+
+                        listener.onSyncComplete(mAssetIndex.updateCollection(collection, photoAssets));
+                    }
+                }, errorCallback);
+    }
+
+    private void finish(boolean succeeded) {
+        if (!succeeded) {
+            Log.w(TAG, "Sync stopped early, keeping what was merged so far");
+        }
+
+        mSyncing = false;
+        mLastSyncUptime = SystemClock.uptimeMillis();
+
+        final boolean changed = mChanged;
+        final Listener listener = mListener;
+        mListener = null;
+
+        if (changed) {
+            saveInBackground();
+        }
+        if (listener != null) {
+            listener.onSyncComplete(changed);
+        }
+    }
+
+    private void saveInBackground() {
+        mDiskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mAssetIndex.save();
+            }
+        });
+    }
+
+    private final IAdobeGenericErrorCallback<AdobeCSDKException> mErrorCallback = new IAdobeGenericErrorCallback<AdobeCSDKException>() {
+        @Override
+        public void onError(AdobeCSDKException e) {
+            Log.e(TAG, "Error syncing asset index: " + e.getMessage());
+            finish(false);
+        }
+    };
+}
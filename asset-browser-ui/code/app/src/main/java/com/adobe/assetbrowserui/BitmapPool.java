@@ -0,0 +1,233 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.assetbrowserui;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A pool of bitmaps that rendition decodes can reuse through {@link BitmapFactory.Options#inBitmap}.
+ *
+ * Bitmaps are bucketed by allocation size on KitKat and later, where any large enough mutable
+ * bitmap of the same config can be reused, and by exact dimensions and config before that. The pool
+ * holds at most {@code maxBytes}, evicting and recycling the least recently released bitmap first,
+ * and gives memory back when the system asks through {@link #trimMemory}.
+ */
+public class BitmapPool {
+
+    private static BitmapPool sSharedInstance;
+
+    private final long mMaxBytes;
+    private long mCurrentBytes;
+
+    /* Size buckets, keyed by allocation byte count (KitKat+) */
+    private final TreeMap<Integer, LinkedList<Bitmap>> mBySize = new TreeMap<>();
+
+    /* Exact-size buckets, keyed by width, height and config (pre-KitKat) */
+    private final Map<String, LinkedList<Bitmap>> mByDimensions = new LinkedHashMap<>();
+
+    /* Every pooled bitmap, least recently released first */
+    private final LinkedHashMap<Bitmap, Boolean> mLru = new LinkedHashMap<>();
+
+    public static synchronized BitmapPool getSharedInstance() {
+        if (sSharedInstance == null) {
+            sSharedInstance = new BitmapPool(Runtime.getRuntime().maxMemory() / 16);
+        }
+        return sSharedInstance;
+    }
+
+    BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Hands a bitmap that is no longer displayed back to the pool. Bitmaps that cannot be reused
+     * are recycled straight away.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || mLru.containsKey(bitmap)) {
+            return;
+        }
+
+        int size = sizeOf(bitmap);
+        if (!bitmap.isMutable() || size > mMaxBytes) {
+            bitmap.recycle();
+            return;
+        }
+
+        bucketFor(bitmap, size).addLast(bitmap);
+        mLru.put(bitmap, Boolean.TRUE);
+        mCurrentBytes += size;
+
+        trimToSize(mMaxBytes);
+    }
+
+    /**
+     * Sets {@link BitmapFactory.Options#inBitmap} to a pooled bitmap that can hold the decode
+     * described by {@code options}, whose bounds and sample size must already be set. Leaves the
+     * options untouched when nothing suitable is pooled.
+     */
+    public synchronized void prepareForDecode(BitmapFactory.Options options) {
+        options.inMutable = true;
+
+        Bitmap.Config config = options.inPreferredConfig != null ? options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+        int sampleSize = Math.max(1, options.inSampleSize);
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+
+        Bitmap candidate = null;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            int needed = width * height * bytesPerPixel(config);
+
+            /* Don't pin a much larger bitmap to a small decode */
+            Integer bucket = mBySize.ceilingKey(needed);
+            while (bucket != null && bucket <= needed * 2 && candidate == null) {
+                candidate = takeMatching(mBySize.get(bucket), config);
+                if (candidate == null) {
+                    bucket = mBySize.higherKey(bucket);
+                }
+            }
+        } else if (sampleSize == 1) {
+            /* Pre-KitKat decodes can only reuse an identically sized bitmap, and only unsampled */
+            LinkedList<Bitmap> bitmaps = mByDimensions.get(dimensionsKey(width, height, config));
+            candidate = takeMatching(bitmaps, config);
+        }
+
+        if (candidate != null) {
+            mLru.remove(candidate);
+            mCurrentBytes -= sizeOf(candidate);
+            removeEmptyBuckets();
+            options.inBitmap = candidate;
+        }
+    }
+
+    /**
+     * Responds to {@link ComponentCallbacks2#onTrimMemory}.
+     */
+    public synchronized void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimToSize(0);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(mMaxBytes / 2);
+        }
+    }
+
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    private void trimToSize(long maxBytes) {
+        while (mCurrentBytes > maxBytes && !mLru.isEmpty()) {
+            Bitmap eldest = mLru.keySet().iterator().next();
+            mLru.remove(eldest);
+            mCurrentBytes -= sizeOf(eldest);
+
+            LinkedList<Bitmap> bucket = bucketFor(eldest, sizeOf(eldest));
+            bucket.remove(eldest);
+            eldest.recycle();
+        }
+        removeEmptyBuckets();
+    }
+
+    private LinkedList<Bitmap> bucketFor(Bitmap bitmap, int size) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            LinkedList<Bitmap> bucket = mBySize.get(size);
+            if (bucket == null) {
+                bucket = new LinkedList<>();
+                mBySize.put(size, bucket);
+            }
+            return bucket;
+        }
+
+        String key = dimensionsKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        LinkedList<Bitmap> bucket = mByDimensions.get(key);
+        if (bucket == null) {
+            bucket = new LinkedList<>();
+            mByDimensions.put(key, bucket);
+        }
+        return bucket;
+    }
+
+    private void removeEmptyBuckets() {
+        removeEmpty(mBySize);
+        removeEmpty(mByDimensions);
+    }
+
+    private static void removeEmpty(Map<?, LinkedList<Bitmap>> buckets) {
+        Iterator<LinkedList<Bitmap>> iterator = buckets.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static Bitmap takeMatching(LinkedList<Bitmap> bitmaps, Bitmap.Config config) {
+        if (bitmaps == null) {
+            return null;
+        }
+        for (Bitmap bitmap : bitmaps) {
+            if (bitmap.getConfig() == config) {
+                bitmaps.remove(bitmap);
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    private static int sizeOf(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+
+    private static String dimensionsKey(int width, int height, Bitmap.Config config) {
+        return width + "x" + height + "_" + config;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.assetbrowserui;
+
+import android.support.annotation.WorkerThread;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * File helpers for the classes that keep state on disk.
+ *
+ * Files are replaced atomically: the new contents go to a temp file next to the target, which is
+ * then renamed over it, so a crash part way through leaves the old file whole rather than a
+ * truncated one.
+ */
+final class FileUtils {
+
+    interface StreamWriter {
+        /**
+         * Writes the new contents of a file. Anything wrapped around {@code outputStream} must be
+         * flushed before returning; the stream itself is closed afterwards.
+         */
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+
+    private FileUtils() {
+    }
+
+    /**
+     * Replaces the contents of {@code file} with what {@code writer} writes. If it throws, the
+     * file is left as it was.
+     */
+    @WorkerThread
+    static void writeAtomically(File file, StreamWriter writer) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        FileOutputStream outputStream = new FileOutputStream(tempFile);
+        try {
+            writer.writeTo(outputStream);
+            outputStream.close();
+        } catch (IOException e) {
+            closeQuietly(outputStream);
+            tempFile.delete();
+            throw e;
+        }
+
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Unable to replace " + file);
+        }
+    }
+
+    @WorkerThread
+    static void writeAtomically(File file, final byte[] data) throws IOException {
+        writeAtomically(file, new StreamWriter() {
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                outputStream.write(data);
+            }
+        });
+    }
+
+    static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
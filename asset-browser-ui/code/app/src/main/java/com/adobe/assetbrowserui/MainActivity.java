@@ -24,8 +24,6 @@
 package com.adobe.assetbrowserui;
 
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
@@ -35,6 +33,8 @@ import android.view.MenuItem;
 import android.view.View;
 import android.widget.Button;
 import android.widget.ImageView;
+import android.widget.ProgressBar;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import com.adobe.creativesdk.foundation.auth.AdobeAuthException;
@@ -48,12 +48,15 @@ import com.adobe.creativesdk.foundation.storage.AdobePhotoException;
 import com.adobe.creativesdk.foundation.storage.AdobeSelection;
 import com.adobe.creativesdk.foundation.storage.AdobeSelectionPhotoAsset;
 import com.adobe.creativesdk.foundation.storage.AdobeUXAssetBrowser;
+import com.adobe.creativesdk.foundation.storage.AdobeUXAssetBrowserConfiguration;
+import com.adobe.creativesdk.foundation.storage.AdobeUXAssetBrowserOption;
 import com.adobe.creativesdk.foundation.storage.IAdobeGenericRequestCallback;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
 
 public class MainActivity extends AppCompatActivity {
@@ -62,12 +65,30 @@ public class MainActivity extends AppCompatActivity {
     static final int REQ_CODE_CSDK_USER_AUTH = 1001;
     static final int REQ_CODE_CSDK_ASSET_BROWSER = 2001;
 
+    static final int MAX_CONCURRENT_DOWNLOADS = 4;
+    static final int MAX_DOWNLOADS_PER_HOST = 2;
+    static final int PREFETCH_NEIGHBOUR_COUNT = 4;
+
+    private static final String PREFS_NAME = "asset_browser";
+    private static final String PREF_LAST_VIEWED_ASSET = "last_viewed_asset";
+
     private Button mLaunchAssetBrowserButton;
     private ImageView mSelectedAssetImageView;
+    private ProgressBar mDownloadProgressBar;
+    private TextView mDownloadStatusTextView;
 
     private AdobeUXAuthManager mUXAuthManager = AdobeUXAuthManager.getSharedAuthManager();
     private AdobeAuthSessionHelper mAuthSessionHelper;
 
+    private RenditionLoader mRenditionLoader;
+    private RenditionDecoder mRenditionDecoder;
+    private RenditionSelector mRenditionSelector;
+    private RenditionDownloadQueue mDownloadQueue;
+    private ProgressiveRenditionLoader mProgressiveRenditionLoader;
+    private AssetIndex mAssetIndex;
+    private AssetIndexSync mAssetIndexSync;
+    private PrefetchScheduler mPrefetchScheduler;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -80,6 +101,20 @@ public class MainActivity extends AppCompatActivity {
 
         mLaunchAssetBrowserButton = (Button) findViewById(R.id.launchAssetBrowserButton);
         mSelectedAssetImageView = (ImageView) findViewById(R.id.selectedAssetImageView);
+        mDownloadProgressBar = (ProgressBar) findViewById(R.id.downloadProgressBar);
+        mDownloadStatusTextView = (TextView) findViewById(R.id.downloadStatusTextView);
+
+        mRenditionLoader = new RenditionLoader(RenditionCache.getSharedInstance(this));
+        mRenditionDecoder = new RenditionDecoder(BitmapPool.getSharedInstance());
+        mRenditionSelector = new RenditionSelector(this);
+        mDownloadQueue = new RenditionDownloadQueue(mRenditionLoader, MAX_CONCURRENT_DOWNLOADS, MAX_DOWNLOADS_PER_HOST);
+        mDownloadQueue.setListener(mDownloadQueueListener);
+        mProgressiveRenditionLoader = new ProgressiveRenditionLoader(mSelectedAssetImageView,
+                mDownloadQueue, mRenditionDecoder, mRenditionSelector, BitmapPool.getSharedInstance());
+        mAssetIndex = AssetIndex.getSharedInstance(this);
+        mAssetIndexSync = AssetIndexSync.getSharedInstance(this);
+        mPrefetchScheduler = new PrefetchScheduler(this, mAssetIndex, mAssetIndexSync,
+                mDownloadQueue, mRenditionSelector, PREFETCH_NEIGHBOUR_COUNT);
 
         View.OnClickListener mLaunchAssetBrowserButtonListener = new View.OnClickListener() {
             @Override
@@ -88,14 +123,62 @@ public class MainActivity extends AppCompatActivity {
             }
         };
         mLaunchAssetBrowserButton.setOnClickListener(mLaunchAssetBrowserButtonListener);
-        
+
+        /* Read the local index now, so browsing is answered from it before any listing comes back */
+        mAssetIndexSync.loadIndex(new AssetIndexSync.LoadListener() {
+            @Override
+            public void onIndexLoaded() {
+                showLastViewed();
+            }
+        });
+    }
+
+    /**
+     * Shows the photo viewed last time from the rendition cache, found through the index, while
+     * signing in and syncing are still under way.
+     */
+    private void showLastViewed() {
+        String assetGuid = getSharedPreferences(PREFS_NAME, MODE_PRIVATE).getString(PREF_LAST_VIEWED_ASSET, null);
+        AssetIndex.Entry entry = assetGuid != null ? mAssetIndex.getEntry(assetGuid) : null;
+        if (entry == null) {
+            return;
+        }
+
+        /* Largest rendition first, whichever was cached will do */
+        List<String> renditionKeys = new ArrayList<>(entry.renditionKeys);
+        Collections.sort(renditionKeys, new Comparator<String>() {
+            @Override
+            public int compare(String lhs, String rhs) {
+                return RenditionSelector.isLarger(lhs, rhs) ? -1 : (RenditionSelector.isLarger(rhs, lhs) ? 1 : 0);
+            }
+        });
+        List<String> cacheKeys = new ArrayList<>(renditionKeys.size());
+        for (String renditionKey : renditionKeys) {
+            cacheKeys.add(RenditionCache.keyFor(entry.guid, renditionKey, entry.modificationStamp));
+        }
+
+        mRenditionLoader.loadCached(cacheKeys, new RenditionLoader.CachedCallback() {
+            @Override
+            public void onLoaded(byte[] bytes) {
+                if (bytes != null) {
+                    mProgressiveRenditionLoader.showCached(bytes);
+                }
+            }
+        });
     }
 
     private void launchAssetBrowser() {
         AdobeUXAssetBrowser assetBrowser = AdobeUXAssetBrowser.getSharedInstance();
+        AdobeUXAssetBrowserConfiguration configuration = new AdobeUXAssetBrowserConfiguration();
+
+        /* Let the user pick several photos at once */
+        configuration.options = EnumSet.of(
+                AdobeUXAssetBrowserOption.ENABLE_MULTI_SELECT,
+                AdobeUXAssetBrowserOption.SHOW_MULTI_SELECT_ON_POPUP
+        );
 
         try {
-            assetBrowser.popupFileBrowser(this, REQ_CODE_CSDK_ASSET_BROWSER); // Can be any int
+            assetBrowser.popupFileBrowser(this, REQ_CODE_CSDK_ASSET_BROWSER, configuration); // Can be any int
         }
         catch (AdobeCSDKException e) {
             Log.e(TAG, "Error: " + e.getMessage());
@@ -112,6 +195,9 @@ public class MainActivity extends AppCompatActivity {
                     login();
                 } else {
                     Log.d(TAG, "Already logged in!");
+
+                    /* Bring the local asset index up to date in the background */
+                    mAssetIndexSync.sync(mAssetIndexSyncListener);
                 }
             }
         };
@@ -155,6 +241,12 @@ public class MainActivity extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
         mAuthSessionHelper.onDestroy();
+        mProgressiveRenditionLoader.cancel();
+        mPrefetchScheduler.cancel();
+        mDownloadQueue.cancelAll();
+        mRenditionLoader.release();
+        mRenditionDecoder.release();
+        mAssetIndexSync.removeListener(mAssetIndexSyncListener);
     }
 
     @Override
@@ -174,58 +266,36 @@ public class MainActivity extends AppCompatActivity {
 
                     /* 1) */
                     AdobeUXAssetBrowser.ResultProvider assetBrowserResult = new AdobeUXAssetBrowser.ResultProvider(data);
-                    ArrayList listOfSelectedAssetFiles = assetBrowserResult.getSelectionAssetArray();
-                    AdobeSelection selection = (AdobeSelection) listOfSelectedAssetFiles.get(0);
+                    ArrayList<AdobeSelection> listOfSelectedAssetFiles = assetBrowserResult.getSelectionAssetArray();
+
+                    /* 2) Keep the Lightroom Photos */
+                    ArrayList<AdobePhotoAsset> photoAssets = new ArrayList<>();
+                    for (AdobeSelection selection : listOfSelectedAssetFiles) {
+                        if (selection instanceof AdobeSelectionPhotoAsset) {
+                            AdobePhotoAsset photoAsset = ((AdobeSelectionPhotoAsset) selection).getSelectedItem();
+                            mAssetIndex.rememberLiveAsset(photoAsset);
+                            photoAssets.add(photoAsset);
+                        }
+                    }
 
-                    /* 2) */
-                    if (selection instanceof AdobeSelectionPhotoAsset) {
+                    if (!photoAssets.isEmpty()) {
 
                         /* 3) */
-                        IAdobeGenericRequestCallback<byte[], AdobePhotoException> downloadCallBack = new IAdobeGenericRequestCallback<byte[], AdobePhotoException>() {
-                            @Override
-                            public void onCancellation() {
-                                /* 3.a) Cancellation code here */
-                                Log.d(TAG, "onCancellation()");
-                            }
-
-                            @Override
-                            public void onCompletion(byte[] bytes) {
-                                Log.d(TAG, "onCompletion()");
-
-                                /* 3.b) */
-                                InputStream inputStream = new ByteArrayInputStream(bytes);
-                                Bitmap image = BitmapFactory.decodeStream(inputStream);
-                                try {
-                                    inputStream.close();
-                                } catch (IOException e) {
-                                    e.printStackTrace();
-                                }
-                                mSelectedAssetImageView.setImageBitmap(image);
-                            }
-
-                            @Override
-                            public void onError(AdobePhotoException e) {
-                                /* 3.c) Error handler here */
-                                Log.d(TAG, "onError()");
-                                e.printStackTrace();
-                            }
-
-                            @Override
-                            public void onProgress(double v) {
-                                /* 3.d) Code for indicating download progress here */
-                                Log.d(TAG, "onProgress()");
-                            }
-                        };
-
-                        /* 4) */
-                        AdobePhotoAsset photoAsset = ((AdobeSelectionPhotoAsset) selection).getSelectedItem();
+                        AdobePhotoAsset photoAsset = photoAssets.get(0);
                         Map<String, AdobePhotoAssetRendition> renditionMap = photoAsset.getRenditions();
                         for (Map.Entry<String, AdobePhotoAssetRendition> entry : renditionMap.entrySet()) {
                             Log.d(TAG, entry.getKey());
                         }
-                        photoAsset.downloadRendition(renditionMap.get(AdobePhotoAsset.AdobePhotoAssetRenditionImage2048), downloadCallBack);
 
-                        //photoAsset.downloadMasterData(downloadCallBack);
+                        /* 4) Show a thumbnail straight away, then crossfade to the full rendition */
+                        mProgressiveRenditionLoader.load(photoAsset);
+                        getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit().putString(PREF_LAST_VIEWED_ASSET, photoAsset.getGUID()).apply();
+
+                        /* 5) Download the rest of the selection into the rendition cache */
+                        downloadInBackground(photoAssets.subList(1, photoAssets.size()));
+
+                        /* 6) Warm the cache for whatever sits next to it in its collection */
+                        mPrefetchScheduler.prefetchAround(photoAsset, RenditionSelector.targetLongEdgeFor(mSelectedAssetImageView));
                     }
                     else {
                         Toast.makeText(MainActivity.this, "Please choose a Lightroom Photo", Toast.LENGTH_LONG).show();
@@ -236,6 +306,74 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    private void downloadInBackground(List<AdobePhotoAsset> photoAssets) {
+        int targetLongEdge = RenditionSelector.targetLongEdgeFor(mSelectedAssetImageView);
+
+        for (final AdobePhotoAsset photoAsset : photoAssets) {
+            String renditionKey = mRenditionSelector.select(photoAsset.getRenditions(), targetLongEdge);
+
+            mDownloadQueue.enqueue(photoAsset, renditionKey, RenditionDownloadQueue.PRIORITY_NORMAL, new IAdobeGenericRequestCallback<byte[], AdobePhotoException>() {
+                @Override
+                public void onCancellation() {
+                    Log.d(TAG, "onCancellation() " + photoAsset.getGUID());
+                }
+
+                @Override
+                public void onCompletion(byte[] bytes) {
+                    Log.d(TAG, "onCompletion() " + photoAsset.getGUID());
+                }
+
+                @Override
+                public void onError(AdobePhotoException e) {
+                    Log.d(TAG, "onError() " + photoAsset.getGUID());
+                    e.printStackTrace();
+                }
+
+                @Override
+                public void onProgress(double v) {
+                }
+            });
+        }
+    }
+
+    private AssetIndexSync.Listener mAssetIndexSyncListener = new AssetIndexSync.Listener() {
+        @Override
+        public void onSyncComplete(boolean changed) {
+            Log.d(TAG, changed ? "Asset index updated" : "Asset index already up to date");
+        }
+    };
+
+    private RenditionDownloadQueue.Listener mDownloadQueueListener = new RenditionDownloadQueue.Listener() {
+        @Override
+        public void onBatchProgress(double progress, int completed, int total, long etaMillis) {
+            /* Already on the main thread, and at most once per frame */
+            mDownloadProgressBar.setVisibility(View.VISIBLE);
+            mDownloadProgressBar.setProgress((int) (progress * 100));
+
+            mDownloadStatusTextView.setVisibility(View.VISIBLE);
+            if (etaMillis != ProgressDispatcher.UNKNOWN) {
+                long etaSeconds = (etaMillis + 999) / 1000;
+                mDownloadStatusTextView.setText(getString(R.string.download_status_eta, completed, total, etaSeconds));
+            } else {
+                mDownloadStatusTextView.setText(getString(R.string.download_status, completed, total));
+            }
+        }
+
+        @Override
+        public void onBatchComplete(final int succeeded, final int failed) {
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    mDownloadProgressBar.setVisibility(View.INVISIBLE);
+                    mDownloadStatusTextView.setVisibility(View.INVISIBLE);
+                    if (failed > 0) {
+                        Toast.makeText(MainActivity.this, failed + " photo(s) failed to download", Toast.LENGTH_LONG).show();
+                    }
+                }
+            });
+        }
+    };
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
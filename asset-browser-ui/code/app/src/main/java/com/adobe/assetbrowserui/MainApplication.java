@@ -45,6 +45,12 @@ public class MainApplication extends Application implements IAdobeAuthClientCred
         AdobeCSDKFoundation.initializeCSDKFoundation(getApplicationContext());
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        BitmapPool.getSharedInstance().trimMemory(level);
+    }
+
     @Override
     public String getClientID() {
         return CREATIVE_SDK_CLIENT_ID;
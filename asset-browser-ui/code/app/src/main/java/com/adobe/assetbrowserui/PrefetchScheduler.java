@@ -0,0 +1,293 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.assetbrowserui;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+import android.util.Log;
+
+import com.adobe.creativesdk.foundation.storage.AdobePhotoAsset;
+import com.adobe.creativesdk.foundation.storage.AdobePhotoException;
+import com.adobe.creativesdk.foundation.storage.IAdobeGenericRequestCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Warms the rendition cache for the assets next to a selection, so browsing on feels instant.
+ *
+ * Neighbours come from the {@link AssetIndex}, nearest first, alternating after and before the
+ * selection. Prefetches go through the {@link RenditionDownloadQueue} at
+ * {@link RenditionDownloadQueue#PRIORITY_PREFETCH}, behind anything the user asked for. They only
+ * start on an unmetered network with the battery in good shape, and are cancelled as soon as
+ * either changes, or when the selection moves on.
+ */
+public class PrefetchScheduler {
+
+    private static final String TAG = PrefetchScheduler.class.getSimpleName();
+
+    private static final int LOW_BATTERY_PERCENT = 15;
+
+    private final Context mContext;
+    private final AssetIndex mAssetIndex;
+    private final AssetIndexSync mAssetIndexSync;
+    private final RenditionDownloadQueue mDownloadQueue;
+    private final RenditionSelector mRenditionSelector;
+    private final int mNeighbourCount;
+
+    private final List<Prefetch> mInFlight = new ArrayList<>();
+    private boolean mReceiverRegistered;
+
+    /* Bumped on every schedule or cancel, so late listings don't prefetch for an old selection */
+    private int mGeneration;
+
+    private final BroadcastReceiver mConditionsReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (!canPrefetch()) {
+                Log.d(TAG, "Conditions changed, cancelling prefetch");
+                cancel();
+            }
+        }
+    };
+
+    /**
+     * One prefetch handed to the download queue, tracked by itself so a late callback from an
+     * earlier selection can't clear a newer prefetch of the same asset.
+     */
+    private class Prefetch implements IAdobeGenericRequestCallback<byte[], AdobePhotoException> {
+        final AdobePhotoAsset photoAsset;
+
+        Prefetch(AdobePhotoAsset photoAsset) {
+            this.photoAsset = photoAsset;
+        }
+
+        @Override
+        public void onCancellation() {
+            onPrefetchFinished(this);
+        }
+
+        @Override
+        public void onCompletion(byte[] bytes) {
+            onPrefetchFinished(this);
+        }
+
+        @Override
+        public void onError(AdobePhotoException e) {
+            onPrefetchFinished(this);
+            Log.d(TAG, "Prefetch failed for " + photoAsset.getGUID() + ": " + e.getMessage());
+        }
+
+        @Override
+        public void onProgress(double v) {
+        }
+    }
+
+    /**
+     * @param neighbourCount how many assets to prefetch around each selection.
+     */
+    public PrefetchScheduler(Context context, AssetIndex assetIndex, AssetIndexSync assetIndexSync,
+                             RenditionDownloadQueue downloadQueue, RenditionSelector renditionSelector, int neighbourCount) {
+        mContext = context.getApplicationContext();
+        mAssetIndex = assetIndex;
+        mAssetIndexSync = assetIndexSync;
+        mDownloadQueue = downloadQueue;
+        mRenditionSelector = renditionSelector;
+        mNeighbourCount = neighbourCount;
+    }
+
+    /**
+     * Replaces whatever is being prefetched with the neighbours of {@code photoAsset}, at the
+     * rendition size a view with a {@code targetLongEdge} pixel long edge would pick. Call it on
+     * the main thread.
+     */
+    public void prefetchAround(AdobePhotoAsset photoAsset, final int targetLongEdge) {
+        cancel();
+
+        if (!canPrefetch()) {
+            Log.d(TAG, "Not prefetching on this network or battery level");
+            return;
+        }
+
+        final String assetGuid = photoAsset.getGUID();
+        String collectionGuid = mAssetIndex.getCollectionGuid(assetGuid);
+        if (collectionGuid == null) {
+            return; // Not indexed yet, so the neighbours aren't known
+        }
+
+        final List<AssetIndex.Entry> neighbours = neighboursOf(assetGuid, mAssetIndex.getEntries(collectionGuid));
+        if (hasLiveAssets(neighbours)) {
+            enqueue(neighbours, targetLongEdge);
+            return;
+        }
+
+        /* The sync skipped this collection as unchanged, list it to get the SDK objects */
+        final int generation = mGeneration;
+        mAssetIndexSync.refreshCollection(collectionGuid, new AssetIndexSync.Listener() {
+            @Override
+            public void onSyncComplete(boolean changed) {
+                if (generation == mGeneration && canPrefetch()) {
+                    enqueue(neighboursOf(assetGuid, mAssetIndex.getEntries(mAssetIndex.getCollectionGuid(assetGuid))), targetLongEdge);
+                }
+            }
+        });
+    }
+
+    /**
+     * Cancels every prefetch still waiting or running. Downloads the user asked for are left
+     * alone, even for the same assets.
+     */
+    public void cancel() {
+        mGeneration++;
+
+        List<Prefetch> inFlight = new ArrayList<>(mInFlight);
+        mInFlight.clear();
+        for (Prefetch prefetch : inFlight) {
+            mDownloadQueue.cancelPrefetch(prefetch.photoAsset);
+        }
+
+        unregisterReceiver();
+    }
+
+    private void enqueue(List<AssetIndex.Entry> neighbours, int targetLongEdge) {
+        for (AssetIndex.Entry entry : neighbours) {
+            AdobePhotoAsset photoAsset = mAssetIndex.getLiveAsset(entry.guid);
+            if (photoAsset == null) {
+                continue;
+            }
+
+            String renditionKey = mRenditionSelector.select(photoAsset.getRenditions(), targetLongEdge);
+            Prefetch prefetch = new Prefetch(photoAsset);
+            mInFlight.add(prefetch);
+            mDownloadQueue.enqueue(photoAsset, renditionKey, RenditionDownloadQueue.PRIORITY_PREFETCH, prefetch);
+        }
+
+        if (!mInFlight.isEmpty()) {
+            registerReceiver();
+        }
+    }
+
+    private void onPrefetchFinished(Prefetch prefetch) {
+        if (mInFlight.remove(prefetch) && mInFlight.isEmpty()) {
+            unregisterReceiver();
+        }
+    }
+
+    /**
+     * @return up to mNeighbourCount entries around the asset, nearest first.
+     */
+    private List<AssetIndex.Entry> neighboursOf(String assetGuid, List<AssetIndex.Entry> entries) {
+        List<AssetIndex.Entry> neighbours = new ArrayList<>();
+
+        int position = -1;
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i).guid.equals(assetGuid)) {
+                position = i;
+                break;
+            }
+        }
+        if (position < 0) {
+            return neighbours;
+        }
+
+        for (int distance = 1; neighbours.size() < mNeighbourCount; distance++) {
+            int after = position + distance;
+            int before = position - distance;
+            if (after >= entries.size() && before < 0) {
+                break;
+            }
+            if (after < entries.size()) {
+                neighbours.add(entries.get(after));
+            }
+            if (before >= 0 && neighbours.size() < mNeighbourCount) {
+                neighbours.add(entries.get(before));
+            }
+        }
+        return neighbours;
+    }
+
+    private boolean hasLiveAssets(List<AssetIndex.Entry> entries) {
+        for (AssetIndex.Entry entry : entries) {
+            if (mAssetIndex.getLiveAsset(entry.guid) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean canPrefetch() {
+        return mRenditionSelector.currentNetworkClass() == RenditionSelector.NetworkClass.UNMETERED && !isBatteryLow();
+    }
+
+    private boolean isBatteryLow() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            PowerManager powerManager = (PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
+            if (powerManager != null && powerManager.isPowerSaveMode()) {
+                return true;
+            }
+        }
+
+        /* The battery broadcast is sticky, so this reads the last state without registering */
+        Intent batteryStatus = mContext.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (batteryStatus == null) {
+            return false;
+        }
+        if (batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0) {
+            return false;
+        }
+
+        int level = batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = batteryStatus.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        return level >= 0 && scale > 0 && level * 100 / scale <= LOW_BATTERY_PERCENT;
+    }
+
+    private void registerReceiver() {
+        if (mReceiverRegistered) {
+            return;
+        }
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
+        filter.addAction(Intent.ACTION_BATTERY_LOW);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+        }
+        mContext.registerReceiver(mConditionsReceiver, filter);
+        mReceiverRegistered = true;
+    }
+
+    private void unregisterReceiver() {
+        if (mReceiverRegistered) {
+            mContext.unregisterReceiver(mConditionsReceiver);
+            mReceiverRegistered = false;
+        }
+    }
+}
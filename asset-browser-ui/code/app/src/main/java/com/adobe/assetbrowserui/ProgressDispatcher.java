@@ -0,0 +1,227 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.assetbrowserui;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coalesces download progress into at most one update per frame.
+ *
+ * {@link #update} can be called as often as the SDK likes, from any thread; only the latest value
+ * of each download is kept. On the next {@link Choreographer} frame the {@link Listener} receives
+ * one {@link Progress} per download that changed, with a smoothed rate and an ETA, on the main
+ * thread. Create it on the main thread.
+ */
+public class ProgressDispatcher implements Choreographer.FrameCallback {
+
+    public static final long UNKNOWN = -1;
+
+    /* Weight given to the newest rate sample */
+    private static final double RATE_SMOOTHING = 0.3;
+
+    public interface Listener {
+        void onProgressFrame(List<Progress> updated);
+    }
+
+    public static class Progress {
+        public final Object key;
+
+        /* From 0 to 1 */
+        public final double fraction;
+
+        /* Smoothed, in fractions of the download per second */
+        public final double fractionPerSecond;
+
+        /* UNKNOWN unless the download's size was given to start() */
+        public final long bytesPerSecond;
+
+        /* UNKNOWN until there is a rate to go on */
+        public final long etaMillis;
+
+        Progress(Object key, double fraction, double fractionPerSecond, long bytesPerSecond, long etaMillis) {
+            this.key = key;
+            this.fraction = fraction;
+            this.fractionPerSecond = fractionPerSecond;
+            this.bytesPerSecond = bytesPerSecond;
+            this.etaMillis = etaMillis;
+        }
+    }
+
+    private static class Entry {
+        final long totalBytes;
+        double fraction;
+        double emittedFraction;
+        long emittedNanos;
+        double fractionPerSecond;
+        boolean dirty;
+        boolean finished;
+
+        Entry(long totalBytes, long startNanos) {
+            this.totalBytes = totalBytes;
+            this.emittedNanos = startNanos;
+        }
+    }
+
+    private final Listener mListener;
+    private final Choreographer mChoreographer;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final Map<Object, Entry> mEntries = new LinkedHashMap<>();
+    private boolean mFrameScheduled;
+
+    private final Runnable mScheduleFrame = new Runnable() {
+        @Override
+        public void run() {
+            mChoreographer.postFrameCallback(ProgressDispatcher.this);
+        }
+    };
+
+    public ProgressDispatcher(Listener listener) {
+        mListener = listener;
+        mChoreographer = Choreographer.getInstance();
+    }
+
+    /**
+     * Starts tracking a download.
+     *
+     * @param totalBytes size of the download, or {@link #UNKNOWN}.
+     */
+    public synchronized void start(Object key, long totalBytes) {
+        mEntries.put(key, new Entry(totalBytes, System.nanoTime()));
+    }
+
+    public void update(Object key, double fraction) {
+        synchronized (this) {
+            Entry entry = mEntries.get(key);
+            if (entry == null) {
+                entry = new Entry(UNKNOWN, System.nanoTime());
+                mEntries.put(key, entry);
+            }
+            entry.fraction = Math.max(0, Math.min(1, fraction));
+            entry.dirty = true;
+        }
+        scheduleFrame();
+    }
+
+    /**
+     * Reports a download one last time at full progress, then stops tracking it.
+     */
+    public void finish(Object key) {
+        synchronized (this) {
+            Entry entry = mEntries.get(key);
+            if (entry == null) {
+                entry = new Entry(UNKNOWN, System.nanoTime());
+                mEntries.put(key, entry);
+            }
+            entry.fraction = 1;
+            entry.dirty = true;
+            entry.finished = true;
+        }
+        scheduleFrame();
+    }
+
+    /**
+     * Drops every download, including anything waiting for the next frame.
+     */
+    public void clear() {
+        synchronized (this) {
+            mEntries.clear();
+            mFrameScheduled = false;
+        }
+        mMainHandler.removeCallbacks(mScheduleFrame);
+        mChoreographer.removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        List<Progress> updated = new ArrayList<>();
+
+        synchronized (this) {
+            mFrameScheduled = false;
+
+            Iterator<Map.Entry<Object, Entry>> iterator = mEntries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Object, Entry> mapEntry = iterator.next();
+                Entry entry = mapEntry.getValue();
+                if (!entry.dirty) {
+                    continue;
+                }
+
+                updated.add(emit(mapEntry.getKey(), entry, frameTimeNanos));
+                if (entry.finished) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        if (!updated.isEmpty()) {
+            mListener.onProgressFrame(updated);
+        }
+    }
+
+    private Progress emit(Object key, Entry entry, long nowNanos) {
+        /* 1) Blend the rate since the last frame into the running average */
+        long elapsedNanos = nowNanos - entry.emittedNanos;
+        if (elapsedNanos > 0) {
+            double sample = (entry.fraction - entry.emittedFraction) * 1e9 / elapsedNanos;
+            entry.fractionPerSecond = entry.fractionPerSecond == 0
+                    ? sample
+                    : RATE_SMOOTHING * sample + (1 - RATE_SMOOTHING) * entry.fractionPerSecond;
+        }
+        entry.emittedFraction = entry.fraction;
+        entry.emittedNanos = nowNanos;
+        entry.dirty = false;
+
+        /* 2) Derive bytes/sec and the time left from it */
+        long bytesPerSecond = entry.totalBytes > 0 ? (long) (entry.fractionPerSecond * entry.totalBytes) : UNKNOWN;
+        long etaMillis = entry.fractionPerSecond > 0 ? (long) ((1 - entry.fraction) / entry.fractionPerSecond * 1000) : UNKNOWN;
+
+        return new Progress(key, entry.fraction, entry.fractionPerSecond, bytesPerSecond, etaMillis);
+    }
+
+    private void scheduleFrame() {
+        synchronized (this) {
+            if (mFrameScheduled) {
+                return;
+            }
+            mFrameScheduled = true;
+        }
+
+        /* Choreographer callbacks must be posted from the thread that owns it */
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            mScheduleFrame.run();
+        } else {
+            mMainHandler.post(mScheduleFrame);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.assetbrowserui;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.TransitionDrawable;
+import android.util.Log;
+import android.widget.ImageView;
+
+import com.adobe.creativesdk.foundation.storage.AdobePhotoAsset;
+import com.adobe.creativesdk.foundation.storage.AdobePhotoAssetRendition;
+import com.adobe.creativesdk.foundation.storage.AdobePhotoException;
+import com.adobe.creativesdk.foundation.storage.IAdobeGenericRequestCallback;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shows a Lightroom photo in an {@link ImageView} in phases.
+ *
+ * A thumbnail rendition and the rendition picked by {@link RenditionSelector} are requested in
+ * parallel. The thumbnail is shown as soon as it arrives, and each larger rendition crossfades in
+ * over it. Loading a new photo cancels whatever is still in flight for the previous one.
+ *
+ * Bitmaps that stop being displayed are handed back to the {@link BitmapPool} for later decodes.
+ */
+public class ProgressiveRenditionLoader {
+
+    private static final String TAG = ProgressiveRenditionLoader.class.getSimpleName();
+
+    private final ImageView mImageView;
+    private final RenditionDownloadQueue mDownloadQueue;
+    private final RenditionDecoder mRenditionDecoder;
+    private final RenditionSelector mRenditionSelector;
+    private final BitmapPool mBitmapPool;
+    private final int mCrossfadeDuration;
+
+    private Request mCurrentRequest;
+    private Runnable mPendingCrossfadeEnd;
+
+    /**
+     * The phases of a single photo being loaded.
+     */
+    private static class Request {
+        final AdobePhotoAsset photoAsset;
+        final Set<String> requestedRenditionKeys = new HashSet<>();
+        String shownRenditionKey;
+        boolean cancelled;
+
+        Request(AdobePhotoAsset photoAsset) {
+            this.photoAsset = photoAsset;
+        }
+    }
+
+    public ProgressiveRenditionLoader(ImageView imageView, RenditionDownloadQueue downloadQueue,
+                                      RenditionDecoder renditionDecoder, RenditionSelector renditionSelector,
+                                      BitmapPool bitmapPool) {
+        mImageView = imageView;
+        mDownloadQueue = downloadQueue;
+        mRenditionDecoder = renditionDecoder;
+        mRenditionSelector = renditionSelector;
+        mBitmapPool = bitmapPool;
+        mCrossfadeDuration = imageView.getResources().getInteger(android.R.integer.config_shortAnimTime);
+    }
+
+    public void load(AdobePhotoAsset photoAsset) {
+        cancel();
+
+        Request request = new Request(photoAsset);
+        mCurrentRequest = request;
+
+        Map<String, AdobePhotoAssetRendition> renditions = photoAsset.getRenditions();
+        String thumbnailKey = mRenditionSelector.selectThumbnail(renditions);
+        String fullKey = mRenditionSelector.select(renditions, targetLongEdge());
+
+        /* 1) Thumbnail first, so something paints straight away */
+        if (thumbnailKey != null && RenditionSelector.isLarger(fullKey, thumbnailKey)) {
+            loadPhase(request, thumbnailKey);
+        }
+
+        /* 2) The full rendition in parallel, crossfaded in when it lands */
+        loadPhase(request, fullKey);
+    }
+
+    /**
+     * Shows an already downloaded rendition, such as the last photo viewed, unless a photo has
+     * started loading since.
+     */
+    public void showCached(byte[] bytes) {
+        if (mCurrentRequest != null) {
+            return;
+        }
+
+        mRenditionDecoder.decode(bytes, mImageView, new RenditionDecoder.Callback() {
+            @Override
+            public void onDecoded(Bitmap bitmap) {
+                if (mCurrentRequest != null) {
+                    mBitmapPool.put(bitmap);
+                    return;
+                }
+                replaceWith(new BitmapDrawable(mImageView.getResources(), bitmap));
+            }
+        });
+    }
+
+    /**
+     * Cancels the photo currently loading, if any. Downloads still in flight are cancelled through
+     * the SDK, which reports back through onCancellation().
+     */
+    public void cancel() {
+        Request request = mCurrentRequest;
+        mCurrentRequest = null;
+
+        if (request != null && !request.cancelled) {
+            request.cancelled = true;
+            mDownloadQueue.cancel(request.photoAsset);
+        }
+    }
+
+    private void loadPhase(final Request request, final String renditionKey) {
+        if (!request.requestedRenditionKeys.add(renditionKey)) {
+            return; // Already on its way
+        }
+
+        mDownloadQueue.enqueue(request.photoAsset, renditionKey, RenditionDownloadQueue.PRIORITY_VISIBLE, new IAdobeGenericRequestCallback<byte[], AdobePhotoException>() {
+            @Override
+            public void onCancellation() {
+                Log.d(TAG, "Cancelled " + renditionKey + " for " + request.photoAsset.getGUID());
+            }
+
+            @Override
+            public void onCompletion(byte[] bytes) {
+                if (request.cancelled) {
+                    return;
+                }
+
+                mRenditionDecoder.decode(bytes, mImageView, new RenditionDecoder.Callback() {
+                    @Override
+                    public void onDecoded(Bitmap bitmap) {
+                        onPhaseDecoded(request, renditionKey, bitmap);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(AdobePhotoException e) {
+                Log.e(TAG, "Error downloading " + renditionKey + ": " + e.getMessage());
+            }
+
+            @Override
+            public void onProgress(double v) {
+            }
+        });
+    }
+
+    private void onPhaseDecoded(Request request, String renditionKey, Bitmap bitmap) {
+        if (request != mCurrentRequest) {
+            mBitmapPool.put(bitmap); // Superseded by another photo
+            return;
+        }
+
+        /* A larger phase may have beaten this one */
+        if (request.shownRenditionKey != null && !RenditionSelector.isLarger(renditionKey, request.shownRenditionKey)) {
+            mBitmapPool.put(bitmap);
+            return;
+        }
+
+        BitmapDrawable drawable = new BitmapDrawable(mImageView.getResources(), bitmap);
+
+        if (request.shownRenditionKey == null) {
+            replaceWith(drawable);
+        } else {
+            crossfadeTo(drawable);
+        }
+        request.shownRenditionKey = renditionKey;
+
+        /* Once painted, fetch a larger rendition if the network now allows one */
+        String upgradeKey = mRenditionSelector.selectUpgrade(request.photoAsset.getRenditions(), renditionKey, targetLongEdge());
+        if (upgradeKey != null) {
+            loadPhase(request, upgradeKey);
+        }
+    }
+
+    /**
+     * Shows a drawable without a transition, and hands whatever it replaces back to the pool.
+     */
+    private void replaceWith(Drawable drawable) {
+        endPendingCrossfade();
+
+        Drawable previous = mImageView.getDrawable();
+        mImageView.setImageDrawable(drawable);
+        release(previous);
+    }
+
+    private void crossfadeTo(final Drawable drawable) {
+        endPendingCrossfade();
+
+        final Drawable current = mImageView.getDrawable();
+        if (current == null) {
+            mImageView.setImageDrawable(drawable);
+            return;
+        }
+
+        TransitionDrawable transition = new TransitionDrawable(new Drawable[] { current, drawable });
+        transition.setCrossFadeEnabled(true);
+        mImageView.setImageDrawable(transition);
+        transition.startTransition(mCrossfadeDuration);
+
+        /* Once the fade is over, drop the transition and pool the bitmap it faded out */
+        mPendingCrossfadeEnd = new Runnable() {
+            @Override
+            public void run() {
+                mPendingCrossfadeEnd = null;
+                mImageView.setImageDrawable(drawable);
+                release(current);
+            }
+        };
+        mImageView.postDelayed(mPendingCrossfadeEnd, mCrossfadeDuration);
+    }
+
+    private void endPendingCrossfade() {
+        if (mPendingCrossfadeEnd != null) {
+            mImageView.removeCallbacks(mPendingCrossfadeEnd);
+            mPendingCrossfadeEnd.run();
+        }
+    }
+
+    private void release(Drawable drawable) {
+        if (drawable instanceof TransitionDrawable) {
+            TransitionDrawable transition = (TransitionDrawable) drawable;
+            for (int i = 0; i < transition.getNumberOfLayers(); i++) {
+                release(transition.getDrawable(i));
+            }
+        } else if (drawable instanceof BitmapDrawable) {
+            mBitmapPool.put(((BitmapDrawable) drawable).getBitmap());
+        }
+    }
+
+    private int targetLongEdge() {
+        return RenditionSelector.targetLongEdgeFor(mImageView);
+    }
+}
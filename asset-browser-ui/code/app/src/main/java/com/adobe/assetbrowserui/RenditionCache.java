@@ -0,0 +1,240 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+package com.adobe.assetbrowserui;
+
+import android.content.Context;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.adobe.creativesdk.foundation.storage.AdobePhotoAsset;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+
+/**
+ * Two-tier cache for downloaded Lightroom renditions.
+ *
+ * The memory tier is an LRU bounded by the number of bytes it holds. The disk tier lives in the
+ * app's cache directory and is trimmed back to its byte budget, least recently used file first.
+ * Entries are keyed by asset GUID, rendition key and modification stamp, so an edited photo never
+ * serves stale bytes.
+ */
+public class RenditionCache {
+
+    private static final String TAG = RenditionCache.class.getSimpleName();
+
+    private static final String DISK_CACHE_DIR_NAME = "renditions";
+    private static final long DISK_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static RenditionCache sSharedInstance;
+
+    private final LruCache<String, byte[]> mMemoryCache;
+    private final File mDiskCacheDir;
+    private final long mDiskCacheMaxBytes;
+    private final Object mDiskLock = new Object();
+
+    public static synchronized RenditionCache getSharedInstance(Context context) {
+        if (sSharedInstance == null) {
+            /* Use an eighth of the heap for the memory tier */
+            int memoryMaxBytes = (int) (Runtime.getRuntime().maxMemory() / 8);
+            File diskCacheDir = new File(context.getApplicationContext().getCacheDir(), DISK_CACHE_DIR_NAME);
+
+            sSharedInstance = new RenditionCache(memoryMaxBytes, diskCacheDir, DISK_CACHE_MAX_BYTES);
+        }
+        return sSharedInstance;
+    }
+
+    RenditionCache(int memoryMaxBytes, File diskCacheDir, long diskCacheMaxBytes) {
+        mMemoryCache = new LruCache<String, byte[]>(memoryMaxBytes) {
+            @Override
+            protected int sizeOf(String key, byte[] value) {
+                return value.length;
+            }
+        };
+        mDiskCacheDir = diskCacheDir;
+        mDiskCacheMaxBytes = diskCacheMaxBytes;
+    }
+
+    /**
+     * Builds the cache key for a rendition of an asset.
+     */
+    public static String keyFor(AdobePhotoAsset photoAsset, String renditionKey) {
+        Date modificationDate = photoAsset.getModificationDate();
+        long modificationStamp = modificationDate != null ? modificationDate.getTime() : 0;
+
+        return keyFor(photoAsset.getGUID(), renditionKey, modificationStamp);
+    }
+
+    /**
+     * Builds the cache key from an asset's parts, for assets only known from the {@link AssetIndex}.
+     */
+    public static String keyFor(String assetGuid, String renditionKey, long modificationStamp) {
+        return assetGuid + "_" + renditionKey + "_" + modificationStamp;
+    }
+
+    public byte[] getFromMemory(String key) {
+        return mMemoryCache.get(key);
+    }
+
+    public void putInMemory(String key, byte[] data) {
+        mMemoryCache.put(key, data);
+    }
+
+    /**
+     * Reads an entry from the disk tier and promotes it to the memory tier.
+     *
+     * @return the cached bytes, or null on a miss.
+     */
+    @WorkerThread
+    public byte[] getFromDisk(String key) {
+        synchronized (mDiskLock) {
+            File file = fileFor(key);
+            if (!file.isFile()) {
+                return null;
+            }
+
+            byte[] data = new byte[(int) file.length()];
+            InputStream inputStream = null;
+            try {
+                inputStream = new FileInputStream(file);
+                int offset = 0;
+                while (offset < data.length) {
+                    int read = inputStream.read(data, offset, data.length - offset);
+                    if (read < 0) {
+                        throw new IOException("Unexpected end of " + file);
+                    }
+                    offset += read;
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Error reading cached rendition: " + e.getMessage());
+                file.delete();
+                return null;
+            } finally {
+                FileUtils.closeQuietly(inputStream);
+            }
+
+            /* Bump the timestamp so trimming treats this entry as recently used */
+            file.setLastModified(System.currentTimeMillis());
+            mMemoryCache.put(key, data);
+
+            return data;
+        }
+    }
+
+    /**
+     * Writes an entry to the disk tier, then trims the tier back to its budget.
+     */
+    @WorkerThread
+    public void putOnDisk(String key, byte[] data) {
+        synchronized (mDiskLock) {
+            if (!mDiskCacheDir.isDirectory() && !mDiskCacheDir.mkdirs()) {
+                Log.e(TAG, "Unable to create " + mDiskCacheDir);
+                return;
+            }
+
+            try {
+                FileUtils.writeAtomically(fileFor(key), data);
+            } catch (IOException e) {
+                Log.e(TAG, "Error caching rendition: " + e.getMessage());
+                return;
+            }
+
+            trimDiskCache();
+        }
+    }
+
+    public void clear() {
+        mMemoryCache.evictAll();
+
+        synchronized (mDiskLock) {
+            File[] files = mDiskCacheDir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    private void trimDiskCache() {
+        File[] files = mDiskCacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long totalBytes = 0;
+        for (File file : files) {
+            totalBytes += file.length();
+        }
+        if (totalBytes <= mDiskCacheMaxBytes) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified();
+                long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+
+        for (File file : files) {
+            if (totalBytes <= mDiskCacheMaxBytes) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                totalBytes -= length;
+            }
+        }
+    }
+
+    private File fileFor(String key) {
+        return new File(mDiskCacheDir, hashKey(key));
+    }
+
+    private static String hashKey(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] hash = digest.digest(key.getBytes("UTF-8"));
+
+            StringBuilder builder = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                builder.append(String.format("%02x", b & 0xff));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return String.valueOf(key.hashCode());
+        }
+    }
+}
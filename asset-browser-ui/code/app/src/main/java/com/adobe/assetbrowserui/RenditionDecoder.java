@@ -0,0 +1,168 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.assetbrowserui;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Decodes downloaded renditions off the main thread, sized for the view that will show them.
+ *
+ * The image bounds are read first so the decode can be subsampled down to the target view, and
+ * images without an alpha channel are decoded as RGB_565 to halve their footprint. Decodes reuse
+ * bitmaps from a {@link BitmapPool} where they can. Only the final bitmap is posted back to the
+ * main thread.
+ */
+public class RenditionDecoder {
+
+    private static final String TAG = RenditionDecoder.class.getSimpleName();
+
+    public interface Callback {
+        void onDecoded(Bitmap bitmap);
+    }
+
+    private final BitmapPool mBitmapPool;
+    private final ExecutorService mDecodeExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    public RenditionDecoder(BitmapPool bitmapPool) {
+        mBitmapPool = bitmapPool;
+    }
+
+    /**
+     * Decodes a rendition for display in an {@link ImageView}. Must be called on the main thread,
+     * since the target size is read from the view.
+     */
+    public void decode(byte[] data, ImageView targetView, Callback callback) {
+        int[] targetSize = targetSizeFor(targetView);
+        decode(data, targetSize[0], targetSize[1], callback);
+    }
+
+    public void decode(final byte[] data, final int targetWidth, final int targetHeight, final Callback callback) {
+        mDecodeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = decodeSampled(data, targetWidth, targetHeight);
+                if (bitmap == null) {
+                    Log.e(TAG, "Unable to decode rendition");
+                    return;
+                }
+
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onDecoded(bitmap);
+                    }
+                });
+            }
+        });
+    }
+
+    public void release() {
+        mMainHandler.removeCallbacksAndMessages(null);
+        mDecodeExecutor.shutdownNow();
+    }
+
+    Bitmap decodeSampled(byte[] data, int targetWidth, int targetHeight) {
+
+        /* 1) Read the bounds only */
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        /* 2) Subsample down to the target size, and drop the alpha channel for JPEGs */
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, targetWidth, targetHeight);
+        options.inPreferredConfig = "image/jpeg".equals(options.outMimeType) ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        options.inJustDecodeBounds = false;
+
+        /* 3) Decode for real, into a pooled bitmap when one fits */
+        mBitmapPool.prepareForDecode(options);
+        try {
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IllegalArgumentException e) {
+            /* The pooled bitmap couldn't take the decode after all, so fall back to a fresh one */
+            mBitmapPool.put(options.inBitmap);
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+    }
+
+    /**
+     * Returns the largest power of two sample size that keeps both dimensions at or above the
+     * target size.
+     */
+    static int calculateInSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int inSampleSize = 1;
+
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            return inSampleSize;
+        }
+
+        while ((width / (inSampleSize * 2)) >= targetWidth && (height / (inSampleSize * 2)) >= targetHeight) {
+            inSampleSize *= 2;
+        }
+
+        return inSampleSize;
+    }
+
+    /**
+     * Returns the pixel size an {@link ImageView} will display at. Views that wrap their content
+     * have no meaningful size of their own, so the display size is used instead.
+     */
+    static int[] targetSizeFor(ImageView view) {
+        if (!hasMeasuredSize(view)) {
+            DisplayMetrics displayMetrics = view.getResources().getDisplayMetrics();
+            return new int[] { displayMetrics.widthPixels, displayMetrics.heightPixels };
+        }
+
+        return new int[] { view.getWidth(), view.getHeight() };
+    }
+
+    /**
+     * Returns true if an {@link ImageView} has a laid out size of its own, rather than wrapping
+     * its content.
+     */
+    static boolean hasMeasuredSize(ImageView view) {
+        ViewGroup.LayoutParams layoutParams = view.getLayoutParams();
+
+        boolean wrapsContent = layoutParams == null
+                || layoutParams.width == ViewGroup.LayoutParams.WRAP_CONTENT
+                || layoutParams.height == ViewGroup.LayoutParams.WRAP_CONTENT;
+
+        return !wrapsContent && view.getWidth() > 0 && view.getHeight() > 0;
+    }
+}
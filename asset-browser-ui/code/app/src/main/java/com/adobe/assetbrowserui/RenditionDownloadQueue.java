@@ -0,0 +1,437 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.assetbrowserui;
+
+import android.util.Log;
+
+import com.adobe.creativesdk.foundation.storage.AdobePhotoAsset;
+import com.adobe.creativesdk.foundation.storage.AdobePhotoAssetRendition;
+import com.adobe.creativesdk.foundation.storage.AdobePhotoException;
+import com.adobe.creativesdk.foundation.storage.IAdobeGenericRequestCallback;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Schedules rendition downloads with bounded concurrency.
+ *
+ * At most {@code maxConcurrent} downloads run at once, and at most {@code maxPerHost} of those
+ * against the same host. Waiting downloads start in priority order, so whatever is on screen goes
+ * before background work, and prefetches go last. The progress of every non-prefetch download in
+ * the current batch is combined into a single aggregate for the {@link Listener}, delivered on the
+ * main thread at most once per frame through a {@link ProgressDispatcher}. Create it on the main
+ * thread.
+ */
+public class RenditionDownloadQueue {
+
+    private static final String TAG = RenditionDownloadQueue.class.getSimpleName();
+
+    /* Lower values start first */
+    public static final int PRIORITY_VISIBLE = 0;
+    public static final int PRIORITY_NORMAL = 10;
+
+    /* Speculative work, left out of the batch progress and outcome */
+    public static final int PRIORITY_PREFETCH = 20;
+
+    private static final int OUTCOME_SUCCEEDED = 0;
+    private static final int OUTCOME_FAILED = 1;
+    private static final int OUTCOME_CANCELLED = 2;
+
+    public interface Listener {
+        /**
+         * @param progress aggregate progress of the current batch, from 0 to 1.
+         * @param etaMillis estimated time left in the batch, or {@link ProgressDispatcher#UNKNOWN}.
+         */
+        void onBatchProgress(double progress, int completed, int total, long etaMillis);
+
+        void onBatchComplete(int succeeded, int failed);
+    }
+
+    private final RenditionLoader mRenditionLoader;
+    private final ProgressDispatcher mProgressDispatcher;
+    private final int mMaxConcurrent;
+    private final int mMaxPerHost;
+
+    private final PriorityQueue<Task> mPending = new PriorityQueue<>();
+    private final List<Task> mRunning = new ArrayList<>();
+    private final Map<String, Integer> mRunningPerHost = new HashMap<>();
+    private long mSequence;
+
+    /* The current batch, reset whenever the queue drains */
+    private final List<Task> mBatch = new ArrayList<>();
+    private int mBatchSucceeded;
+    private int mBatchFailed;
+
+    private Listener mListener;
+
+    private class Task implements Comparable<Task> {
+        final AdobePhotoAsset photoAsset;
+        final String renditionKey;
+        final int priority;
+        final long sequence;
+        final String host;
+        final IAdobeGenericRequestCallback<byte[], AdobePhotoException> callback;
+        final boolean inBatch;
+        RenditionLoader.Request loaderRequest;
+        double progress;
+        double progressPerSecond;
+        boolean finished;
+
+        Task(AdobePhotoAsset photoAsset, String renditionKey, int priority,
+             IAdobeGenericRequestCallback<byte[], AdobePhotoException> callback) {
+            this.photoAsset = photoAsset;
+            this.renditionKey = renditionKey;
+            this.priority = priority;
+            this.sequence = mSequence++;
+            this.host = hostOf(photoAsset, renditionKey);
+            this.callback = callback;
+            this.inBatch = priority < PRIORITY_PREFETCH;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (priority != other.priority) {
+                return priority < other.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    public RenditionDownloadQueue(RenditionLoader renditionLoader, int maxConcurrent, int maxPerHost) {
+        mRenditionLoader = renditionLoader;
+        mProgressDispatcher = new ProgressDispatcher(new ProgressDispatcher.Listener() {
+            @Override
+            public void onProgressFrame(List<ProgressDispatcher.Progress> updated) {
+                notifyBatchProgress(updated);
+            }
+        });
+        mMaxConcurrent = maxConcurrent;
+        mMaxPerHost = maxPerHost;
+    }
+
+    public synchronized void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Queues a rendition download. The callback follows the same contract as
+     * {@link RenditionLoader#load}.
+     */
+    public void enqueue(AdobePhotoAsset photoAsset, String renditionKey, int priority,
+                        IAdobeGenericRequestCallback<byte[], AdobePhotoException> callback) {
+        synchronized (this) {
+            Task task = new Task(photoAsset, renditionKey, priority, callback);
+            mPending.add(task);
+            if (task.inBatch) {
+                mBatch.add(task);
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * Cancels every download of an asset. Waiting downloads are dropped, and running ones are
+     * cancelled through their {@link RenditionLoader.Request}. Either way the callback hears about
+     * it through onCancellation(). Call it on the main thread.
+     */
+    public void cancel(AdobePhotoAsset photoAsset) {
+        List<Task> dropped = new ArrayList<>();
+        List<Task> running = new ArrayList<>();
+
+        synchronized (this) {
+            Iterator<Task> iterator = mPending.iterator();
+            while (iterator.hasNext()) {
+                Task task = iterator.next();
+                if (task.photoAsset == photoAsset) {
+                    iterator.remove();
+                    dropped.add(task);
+                }
+            }
+            for (Task task : mRunning) {
+                if (task.photoAsset == photoAsset) {
+                    running.add(task);
+                }
+            }
+        }
+
+        for (Task task : dropped) {
+            onTaskFinished(task, OUTCOME_CANCELLED);
+            task.callback.onCancellation();
+        }
+        for (Task task : running) {
+            if (task.loaderRequest != null) {
+                task.loaderRequest.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Cancels the prefetches of an asset, leaving any other download of it alone. Waiting
+     * prefetches are dropped, and running ones that haven't reached the network yet never will.
+     * One already downloading is cancelled through the SDK only when nothing else is downloading
+     * the asset, since the SDK cancels every download of an asset at once; otherwise it is left to
+     * finish. Call it on the main thread.
+     */
+    public void cancelPrefetch(AdobePhotoAsset photoAsset) {
+        List<Task> dropped = new ArrayList<>();
+        List<Task> prefetchRunning = new ArrayList<>();
+        boolean otherRunning = false;
+
+        synchronized (this) {
+            Iterator<Task> iterator = mPending.iterator();
+            while (iterator.hasNext()) {
+                Task task = iterator.next();
+                if (task.photoAsset == photoAsset && task.priority == PRIORITY_PREFETCH) {
+                    iterator.remove();
+                    dropped.add(task);
+                }
+            }
+            for (Task task : mRunning) {
+                if (task.photoAsset == photoAsset) {
+                    if (task.priority == PRIORITY_PREFETCH) {
+                        prefetchRunning.add(task);
+                    } else {
+                        otherRunning = true;
+                    }
+                }
+            }
+        }
+
+        for (Task task : dropped) {
+            onTaskFinished(task, OUTCOME_CANCELLED);
+            task.callback.onCancellation();
+        }
+        for (Task task : prefetchRunning) {
+            if (task.loaderRequest != null) {
+                task.loaderRequest.cancel(!otherRunning);
+            }
+        }
+    }
+
+    public void cancelAll() {
+        List<AdobePhotoAsset> photoAssets = new ArrayList<>();
+
+        synchronized (this) {
+            for (Task task : mPending) {
+                if (!photoAssets.contains(task.photoAsset)) {
+                    photoAssets.add(task.photoAsset);
+                }
+            }
+            for (Task task : mRunning) {
+                if (!photoAssets.contains(task.photoAsset)) {
+                    photoAssets.add(task.photoAsset);
+                }
+            }
+        }
+
+        for (AdobePhotoAsset photoAsset : photoAssets) {
+            cancel(photoAsset);
+        }
+    }
+
+    private void dispatch() {
+        List<Task> toStart = new ArrayList<>();
+
+        synchronized (this) {
+            List<Task> skipped = new ArrayList<>();
+
+            while (mRunning.size() < mMaxConcurrent && !mPending.isEmpty()) {
+                Task task = mPending.poll();
+                Integer runningOnHost = mRunningPerHost.get(task.host);
+
+                if (runningOnHost != null && runningOnHost >= mMaxPerHost) {
+                    skipped.add(task); // Host is busy, let lower priority work on other hosts go ahead
+                    continue;
+                }
+
+                mRunning.add(task);
+                mRunningPerHost.put(task.host, runningOnHost == null ? 1 : runningOnHost + 1);
+                toStart.add(task);
+            }
+
+            mPending.addAll(skipped);
+        }
+
+        for (Task task : toStart) {
+            start(task);
+        }
+    }
+
+    private void start(final Task task) {
+        if (task.inBatch) {
+            mProgressDispatcher.start(task, ProgressDispatcher.UNKNOWN);
+        }
+
+        task.loaderRequest = mRenditionLoader.load(task.photoAsset, task.renditionKey, new IAdobeGenericRequestCallback<byte[], AdobePhotoException>() {
+            @Override
+            public void onCancellation() {
+                onTaskFinished(task, OUTCOME_CANCELLED);
+                task.callback.onCancellation();
+                dispatch();
+            }
+
+            @Override
+            public void onCompletion(byte[] bytes) {
+                onTaskFinished(task, OUTCOME_SUCCEEDED);
+                task.callback.onCompletion(bytes);
+                dispatch();
+            }
+
+            @Override
+            public void onError(AdobePhotoException e) {
+                onTaskFinished(task, OUTCOME_FAILED);
+                task.callback.onError(e);
+                dispatch();
+            }
+
+            @Override
+            public void onProgress(double v) {
+                synchronized (RenditionDownloadQueue.this) {
+                    task.progress = v;
+                }
+                task.callback.onProgress(v);
+                if (task.inBatch) {
+                    mProgressDispatcher.update(task, v);
+                }
+            }
+        });
+    }
+
+    private void onTaskFinished(Task task, int outcome) {
+        Listener listener;
+        boolean batchComplete;
+        int batchSucceeded;
+        int batchFailed;
+
+        synchronized (this) {
+            if (task.finished) {
+                return;
+            }
+            task.finished = true;
+            task.progress = 1;
+
+            if (mRunning.remove(task)) {
+                Integer runningOnHost = mRunningPerHost.get(task.host);
+                if (runningOnHost != null && runningOnHost > 1) {
+                    mRunningPerHost.put(task.host, runningOnHost - 1);
+                } else {
+                    mRunningPerHost.remove(task.host);
+                }
+            }
+
+            if (!task.inBatch) {
+                return;
+            }
+
+            if (outcome == OUTCOME_SUCCEEDED) {
+                mBatchSucceeded++;
+            } else if (outcome == OUTCOME_FAILED) {
+                mBatchFailed++;
+            }
+
+            listener = mListener;
+            batchSucceeded = mBatchSucceeded;
+            batchFailed = mBatchFailed;
+            batchComplete = true;
+            for (Task batchTask : mBatch) {
+                batchComplete &= batchTask.finished;
+            }
+            if (batchComplete) {
+                mBatch.clear();
+                mBatchSucceeded = 0;
+                mBatchFailed = 0;
+            }
+        }
+
+        if (batchComplete) {
+            /* Nothing left to report, so drop any frame still pending for this batch */
+            mProgressDispatcher.clear();
+
+            Log.d(TAG, "Batch complete, " + batchSucceeded + " succeeded, " + batchFailed + " failed");
+            if (listener != null) {
+                listener.onBatchComplete(batchSucceeded, batchFailed);
+            }
+        } else {
+            mProgressDispatcher.finish(task);
+        }
+    }
+
+    private void notifyBatchProgress(List<ProgressDispatcher.Progress> updated) {
+        Listener listener;
+        double progress = 0;
+        double progressPerSecond = 0;
+        int completed = 0;
+        int total;
+
+        synchronized (this) {
+            for (ProgressDispatcher.Progress update : updated) {
+                Task task = (Task) update.key;
+                task.progressPerSecond = task.finished ? 0 : update.fractionPerSecond;
+            }
+
+            listener = mListener;
+            total = mBatch.size();
+            if (listener == null || total == 0) {
+                return;
+            }
+            for (Task task : mBatch) {
+                progress += task.progress;
+                progressPerSecond += task.progressPerSecond;
+                completed += task.finished ? 1 : 0;
+            }
+            progress /= total;
+            progressPerSecond /= total;
+        }
+
+        long etaMillis = progressPerSecond > 0 ? (long) ((1 - progress) / progressPerSecond * 1000) : ProgressDispatcher.UNKNOWN;
+        listener.onBatchProgress(progress, completed, total, etaMillis);
+    }
+
+    private static String hostOf(AdobePhotoAsset photoAsset, String renditionKey) {
+        AdobePhotoAssetRendition rendition = photoAsset.getRenditions().get(renditionKey);
+        URI dataPath = rendition != null ? rendition.getDataPath() : null;
+        if (dataPath != null && dataPath.getHost() != null) {
+            return dataPath.getHost();
+        }
+
+        String baseHref = photoAsset.getBaseHref();
+        if (baseHref != null) {
+            try {
+                String host = URI.create(baseHref).getHost();
+                if (host != null) {
+                    return host;
+                }
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Unexpected base href " + baseHref);
+            }
+        }
+        return "";
+    }
+}
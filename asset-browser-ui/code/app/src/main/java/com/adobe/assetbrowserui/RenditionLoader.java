@@ -0,0 +1,226 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+package com.adobe.assetbrowserui;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.adobe.creativesdk.foundation.storage.AdobePhotoAsset;
+import com.adobe.creativesdk.foundation.storage.AdobePhotoAssetRendition;
+import com.adobe.creativesdk.foundation.storage.AdobePhotoException;
+import com.adobe.creativesdk.foundation.storage.IAdobeGenericRequestCallback;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads Lightroom renditions through a {@link RenditionCache}, only going to the network on a miss.
+ *
+ * Results are delivered to the same {@link IAdobeGenericRequestCallback} contract that
+ * {@link AdobePhotoAsset#downloadRendition} uses, always on the main thread, until
+ * {@link #release()}.
+ */
+public class RenditionLoader {
+
+    /* Shared by every loader for the life of the process, downloads can complete after a release */
+    private static final ExecutorService sDiskExecutor = Executors.newSingleThreadExecutor();
+
+    public interface CachedCallback {
+        /**
+         * @param bytes the first of the requested renditions that is cached, or null if none is.
+         */
+        void onLoaded(byte[] bytes);
+    }
+
+    /**
+     * A load in progress. Only touched on the main thread.
+     */
+    public static class Request {
+        private final AdobePhotoAsset mPhotoAsset;
+        private boolean mCancelled;
+        private boolean mDownloading;
+
+        Request(AdobePhotoAsset photoAsset) {
+            mPhotoAsset = photoAsset;
+        }
+
+        /**
+         * Cancels the load. One still checking the cache never starts its download, and one
+         * downloading is cancelled through the SDK, which cancels every download of the asset.
+         * Either way the callback hears about it through onCancellation().
+         *
+         * @param cancelDownload false to leave an SDK download running, such as when another
+         *                       load of the same asset still wants it.
+         */
+        public void cancel(boolean cancelDownload) {
+            if (mCancelled) {
+                return;
+            }
+            mCancelled = true;
+            if (mDownloading && cancelDownload) {
+                mPhotoAsset.cancelDownloadRequest();
+            }
+        }
+    }
+
+    private final RenditionCache mCache;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /* Only touched on the main thread */
+    private boolean mReleased;
+
+    public RenditionLoader(RenditionCache cache) {
+        mCache = cache;
+    }
+
+    /**
+     * @return a handle to cancel the load with. Call it on the main thread.
+     */
+    public Request load(final AdobePhotoAsset photoAsset, final String renditionKey,
+                        final IAdobeGenericRequestCallback<byte[], AdobePhotoException> callback) {
+
+        final String cacheKey = RenditionCache.keyFor(photoAsset, renditionKey);
+        final Request request = new Request(photoAsset);
+
+        /* 1) Memory hit, show it straight away */
+        byte[] cached = mCache.getFromMemory(cacheKey);
+        if (cached != null) {
+            callback.onCompletion(cached);
+            return request;
+        }
+
+        /* 2) Check the disk tier off the main thread, and download on a miss */
+        sDiskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final byte[] onDisk = mCache.getFromDisk(cacheKey);
+
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mReleased) {
+                            return;
+                        }
+                        if (request.mCancelled) {
+                            callback.onCancellation(); // Superseded before it got to the network
+                        } else if (onDisk != null) {
+                            callback.onCompletion(onDisk);
+                        } else {
+                            request.mDownloading = true;
+                            download(photoAsset, renditionKey, cacheKey, callback);
+                        }
+                    }
+                });
+            }
+        });
+        return request;
+    }
+
+    /**
+     * Loads the first of {@code cacheKeys} that is in the cache, without going to the network, for
+     * assets known only from the {@link AssetIndex}.
+     */
+    public void loadCached(final List<String> cacheKeys, final CachedCallback callback) {
+        for (String cacheKey : cacheKeys) {
+            byte[] cached = mCache.getFromMemory(cacheKey);
+            if (cached != null) {
+                callback.onLoaded(cached);
+                return;
+            }
+        }
+
+        sDiskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                byte[] onDisk = null;
+                for (int i = 0; i < cacheKeys.size() && onDisk == null; i++) {
+                    onDisk = mCache.getFromDisk(cacheKeys.get(i));
+                }
+
+                final byte[] bytes = onDisk;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!mReleased) {
+                            callback.onLoaded(bytes);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Stops delivering results. Downloads already running still finish and are cached.
+     */
+    public void release() {
+        mReleased = true;
+        mMainHandler.removeCallbacksAndMessages(null);
+    }
+
+    private void download(AdobePhotoAsset photoAsset, String renditionKey, final String cacheKey,
+                          final IAdobeGenericRequestCallback<byte[], AdobePhotoException> callback) {
+
+        AdobePhotoAssetRendition rendition = photoAsset.getRenditions().get(renditionKey);
+
+        photoAsset.downloadRendition(rendition, new IAdobeGenericRequestCallback<byte[], AdobePhotoException>() {
+            @Override
+            public void onCancellation() {
+                if (!mReleased) {
+                    callback.onCancellation();
+                }
+            }
+
+            @Override
+            public void onCompletion(final byte[] bytes) {
+                mCache.putInMemory(cacheKey, bytes);
+                sDiskExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        mCache.putOnDisk(cacheKey, bytes);
+                    }
+                });
+
+                if (!mReleased) {
+                    callback.onCompletion(bytes);
+                }
+            }
+
+            @Override
+            public void onError(AdobePhotoException e) {
+                if (!mReleased) {
+                    callback.onError(e);
+                }
+            }
+
+            @Override
+            public void onProgress(double v) {
+                if (!mReleased) {
+                    callback.onProgress(v);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,241 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.assetbrowserui;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.telephony.TelephonyManager;
+import android.widget.ImageView;
+
+import com.adobe.creativesdk.foundation.storage.AdobePhotoAsset;
+import com.adobe.creativesdk.foundation.storage.AdobePhotoAssetRendition;
+
+import java.util.Map;
+
+/**
+ * Picks which Lightroom rendition to download for a target view.
+ *
+ * The ideal rendition is the smallest one whose long edge covers the view's long edge in pixels.
+ * On metered connections the pick steps down one size, and on slow (2G class) connections two,
+ * so something shows up quickly. {@link #selectUpgrade} then says whether a larger rendition is
+ * worth fetching once the first one has painted, never going past what {@link #select} would pick
+ * on the current network.
+ */
+public class RenditionSelector {
+
+    public enum NetworkClass {
+        UNMETERED,
+        METERED,
+        SLOW
+    }
+
+    /* Rendition keys, smallest first */
+    private static final String[] RENDITION_LADDER = {
+            AdobePhotoAsset.AdobePhotoAssetRenditionImageThumbnail,
+            AdobePhotoAsset.AdobePhotoAssetRenditionImageThumbnail2x,
+            AdobePhotoAsset.AdobePhotoAssetRenditionImage1024,
+            AdobePhotoAsset.AdobePhotoAssetRenditionImage2048,
+            AdobePhotoAsset.AdobePhotoAssetRenditionImageFullSize
+    };
+
+    /* Nominal long edge of each rung, in pixels */
+    private static final int[] RENDITION_LONG_EDGE = {
+            160,
+            320,
+            1024,
+            2048,
+            Integer.MAX_VALUE
+    };
+
+    /* What the service hands out by default, and the most a view without a size of its own gets */
+    static final int BASELINE_LONG_EDGE = 2048;
+
+    private final ConnectivityManager mConnectivityManager;
+
+    public RenditionSelector(Context context) {
+        mConnectivityManager = (ConnectivityManager) context.getApplicationContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    /**
+     * Returns the rendition key to download first for a view whose long edge is
+     * {@code targetLongEdge} pixels, taking the current network into account.
+     */
+    public String select(Map<String, AdobePhotoAssetRendition> renditions, int targetLongEdge) {
+        int rung = selectRung(renditions, targetLongEdge);
+        if (rung < 0) {
+            /* None of the known renditions, let the service sort out the 2048 default */
+            return AdobePhotoAsset.AdobePhotoAssetRenditionImage2048;
+        }
+        return RENDITION_LADDER[rung];
+    }
+
+    /**
+     * Returns the rendition key to upgrade to once {@code currentKey} has painted, or null when
+     * the current rendition is already as large as the current network allows.
+     */
+    public String selectUpgrade(Map<String, AdobePhotoAssetRendition> renditions, String currentKey, int targetLongEdge) {
+        int allowed = selectRung(renditions, targetLongEdge);
+        int current = rungOf(currentKey);
+
+        if (allowed < 0 || allowed <= current) {
+            return null;
+        }
+
+        return RENDITION_LADDER[allowed];
+    }
+
+    /**
+     * Returns the long edge, in pixels, to select renditions for in {@code view}. A view that
+     * wraps its content or hasn't been laid out is sized from the display, but only up to
+     * {@link #BASELINE_LONG_EDGE}.
+     */
+    public static int targetLongEdgeFor(ImageView view) {
+        int[] targetSize = RenditionDecoder.targetSizeFor(view);
+        int longEdge = Math.max(targetSize[0], targetSize[1]);
+
+        return RenditionDecoder.hasMeasuredSize(view) ? longEdge : Math.min(longEdge, BASELINE_LONG_EDGE);
+    }
+
+    /**
+     * Returns the smallest known rendition key the asset has, for painting a placeholder quickly.
+     */
+    public String selectThumbnail(Map<String, AdobePhotoAssetRendition> renditions) {
+        for (String renditionKey : RENDITION_LADDER) {
+            if (renditions.containsKey(renditionKey)) {
+                return renditionKey;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if {@code renditionKey} is a larger rendition than {@code otherKey}. Unknown
+     * keys count as smaller than every known one.
+     */
+    public static boolean isLarger(String renditionKey, String otherKey) {
+        return rungOf(renditionKey) > rungOf(otherKey);
+    }
+
+    public NetworkClass currentNetworkClass() {
+        NetworkInfo networkInfo = mConnectivityManager.getActiveNetworkInfo();
+        if (networkInfo == null || !networkInfo.isConnected()) {
+            return NetworkClass.SLOW;
+        }
+
+        if (networkInfo.getType() == ConnectivityManager.TYPE_MOBILE && isSlowMobileSubtype(networkInfo.getSubtype())) {
+            return NetworkClass.SLOW;
+        }
+
+        return mConnectivityManager.isActiveNetworkMetered() ? NetworkClass.METERED : NetworkClass.UNMETERED;
+    }
+
+    /**
+     * Returns the ideal rung stepped down for the current network, or -1 when the asset has none
+     * of the known renditions.
+     */
+    private int selectRung(Map<String, AdobePhotoAssetRendition> renditions, int targetLongEdge) {
+        int ideal = idealRung(renditions, targetLongEdge);
+        if (ideal < 0) {
+            return -1;
+        }
+
+        int stepDown;
+        switch (currentNetworkClass()) {
+            case SLOW:
+                stepDown = 2;
+                break;
+            case METERED:
+                stepDown = 1;
+                break;
+            default:
+                stepDown = 0;
+                break;
+        }
+
+        int rung = ideal;
+        while (stepDown > 0) {
+            int smaller = availableRungBelow(renditions, rung);
+            if (smaller < 0) {
+                break;
+            }
+            rung = smaller;
+            stepDown--;
+        }
+
+        return rung;
+    }
+
+    private static boolean isSlowMobileSubtype(int subtype) {
+        switch (subtype) {
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+            case TelephonyManager.NETWORK_TYPE_CDMA:
+            case TelephonyManager.NETWORK_TYPE_1xRTT:
+            case TelephonyManager.NETWORK_TYPE_IDEN:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns the smallest available rung that covers the target, falling back to the largest
+     * available rung, or -1 when the asset has none of the known renditions.
+     */
+    private static int idealRung(Map<String, AdobePhotoAssetRendition> renditions, int targetLongEdge) {
+        int largestAvailable = -1;
+
+        for (int i = 0; i < RENDITION_LADDER.length; i++) {
+            if (!renditions.containsKey(RENDITION_LADDER[i])) {
+                continue;
+            }
+            if (RENDITION_LONG_EDGE[i] >= targetLongEdge) {
+                return i;
+            }
+            largestAvailable = i;
+        }
+
+        return largestAvailable;
+    }
+
+    private static int availableRungBelow(Map<String, AdobePhotoAssetRendition> renditions, int rung) {
+        for (int i = rung - 1; i >= 0; i--) {
+            if (renditions.containsKey(RENDITION_LADDER[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int rungOf(String renditionKey) {
+        for (int i = 0; i < RENDITION_LADDER.length; i++) {
+            if (RENDITION_LADDER[i].equals(renditionKey)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,410 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.sendtodesktopapi;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uploads one file to an HTTP endpoint in fixed-size chunks, resuming after a dropped connection or
+ * a process restart instead of starting over.
+ *
+ * Each chunk is a {@code PUT} of its bytes with a {@code Content-Range} header, and any 2xx
+ * response acknowledges it. A few chunks are in flight at once. Acknowledged chunks are recorded in
+ * {@code <source>.upload}, so the next attempt only sends what is missing, as long as the file and
+ * chunk size haven't changed. Once every chunk is in, an empty {@code POST} asks the server to
+ * assemble them.
+ *
+ * This class has no Android dependencies and does its work on the calling thread.
+ */
+public class ChunkedUpload {
+
+    public interface ProgressListener {
+        void onProgress(long bytesAcknowledged, long totalBytes);
+    }
+
+    /**
+     * Thrown for HTTP responses that retrying won't fix on its own.
+     */
+    public static class HttpException extends IOException {
+        public final int responseCode;
+
+        HttpException(int responseCode) {
+            super("Unexpected HTTP response " + responseCode);
+            this.responseCode = responseCode;
+        }
+    }
+
+    public static final int DEFAULT_CHUNK_BYTES = 512 * 1024;
+    public static final int DEFAULT_PARALLELISM = 3;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+    private static final int READ_TIMEOUT_MILLIS = 30 * 1000;
+
+    private static final String STATE_LENGTH = "length";
+    private static final String STATE_MODIFIED = "modified";
+    private static final String STATE_CHUNK_BYTES = "chunkBytes";
+    private static final String STATE_ACKNOWLEDGED = "acknowledged";
+
+    private final URL mUrl;
+    private final Map<String, String> mHeaders;
+    private final File mSourceFile;
+    private final File mStateFile;
+    private final int mChunkBytes;
+    private final int mParallelism;
+
+    private volatile boolean mCancelled;
+    private final List<HttpURLConnection> mConnections = new ArrayList<>();
+
+    /**
+     * @param headers extra request headers, such as authorization. May be null.
+     */
+    public ChunkedUpload(URL url, Map<String, String> headers, File sourceFile, int chunkBytes, int parallelism) {
+        mUrl = url;
+        mHeaders = headers;
+        mSourceFile = sourceFile;
+        mStateFile = new File(sourceFile.getPath() + ".upload");
+        mChunkBytes = chunkBytes;
+        mParallelism = parallelism;
+    }
+
+    public int getChunkCount() {
+        return chunkCount(mSourceFile.length());
+    }
+
+    /**
+     * @return how many chunks a previous attempt got acknowledged.
+     */
+    public int getAcknowledgedChunks() {
+        return readAcknowledged().cardinality();
+    }
+
+    /**
+     * Uploads whatever is still missing and completes the upload, blocking until it is done.
+     *
+     * @throws InterruptedIOException if {@link #cancel} was called. Acknowledged chunks are kept.
+     */
+    public void run(ProgressListener listener) throws IOException {
+        if (mCancelled) {
+            throw new InterruptedIOException("Upload cancelled");
+        }
+        if (!mSourceFile.isFile()) {
+            throw new FileNotFoundException("Unable to read " + mSourceFile);
+        }
+        final long length = mSourceFile.length();
+        int chunkCount = chunkCount(length);
+
+        /* 1) Pick up where the last attempt left off */
+        final BitSet acknowledged = readAcknowledged();
+        long bytesAcknowledged = 0;
+        for (int chunk = acknowledged.nextSetBit(0); chunk >= 0; chunk = acknowledged.nextSetBit(chunk + 1)) {
+            bytesAcknowledged += chunkLength(chunk, length);
+        }
+
+        /* 2) Put the missing chunks, a few at a time, recording each one as it is acknowledged */
+        ExecutorService executor = Executors.newFixedThreadPool(mParallelism);
+        CompletionService<Integer> completionService = new ExecutorCompletionService<>(executor);
+        try {
+            int submitted = 0;
+            for (int chunk = acknowledged.nextClearBit(0); chunk < chunkCount; chunk = acknowledged.nextClearBit(chunk + 1)) {
+                final int index = chunk;
+                completionService.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws IOException {
+                        putChunk(index, length);
+                        return index;
+                    }
+                });
+                submitted++;
+            }
+
+            for (int i = 0; i < submitted; i++) {
+                int chunk = take(completionService);
+                acknowledged.set(chunk);
+                writeState(length, acknowledged);
+
+                bytesAcknowledged += chunkLength(chunk, length);
+                if (listener != null) {
+                    listener.onProgress(bytesAcknowledged, length);
+                }
+            }
+        } finally {
+            /* After a failure, wait out the chunks still in flight, so none lands once run() has returned */
+            executor.shutdownNow();
+            awaitTermination(executor);
+            recordFinished(completionService, acknowledged, length);
+        }
+
+        /* 3) Ask the server to put the file together */
+        complete();
+        deleteState();
+    }
+
+    /**
+     * Stops a running upload from another thread, and any run after it. Acknowledged chunks are
+     * kept for a new upload of the same file.
+     */
+    public void cancel() {
+        mCancelled = true;
+        synchronized (mConnections) {
+            for (HttpURLConnection connection : mConnections) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Forgets any chunks acknowledged so far.
+     */
+    public void deleteState() {
+        mStateFile.delete();
+    }
+
+    private int take(CompletionService<Integer> completionService) throws IOException {
+        try {
+            Future<Integer> future = completionService.take();
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Upload interrupted");
+        } catch (ExecutionException e) {
+            if (mCancelled) {
+                throw new InterruptedIOException("Upload cancelled");
+            }
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Records the chunks acknowledged after a failure stopped {@link #run} taking them, so the
+     * next attempt doesn't send them again.
+     */
+    private void recordFinished(CompletionService<Integer> completionService, BitSet acknowledged, long length) {
+        boolean recorded = false;
+        Future<Integer> future;
+        while ((future = completionService.poll()) != null) {
+            try {
+                acknowledged.set(future.get());
+                recorded = true;
+            } catch (InterruptedException | ExecutionException | CancellationException e) {
+                /* Not acknowledged */
+            }
+        }
+
+        if (recorded) {
+            try {
+                writeState(length, acknowledged);
+            } catch (IOException e) {
+                /* They are sent again next time */
+            }
+        }
+    }
+
+    private static void awaitTermination(ExecutorService executor) {
+        try {
+            executor.awaitTermination(CONNECT_TIMEOUT_MILLIS + READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void putChunk(int chunk, long length) throws IOException {
+        if (mCancelled) {
+            throw new InterruptedIOException("Upload cancelled");
+        }
+
+        long first = (long) chunk * mChunkBytes;
+        byte[] data = new byte[chunkLength(chunk, length)];
+        RandomAccessFile sourceFile = new RandomAccessFile(mSourceFile, "r");
+        try {
+            sourceFile.seek(first);
+            sourceFile.readFully(data);
+        } finally {
+            FileUtils.closeQuietly(sourceFile);
+        }
+
+        HttpURLConnection connection = open("PUT");
+        try {
+            connection.setRequestProperty("Content-Range", "bytes " + first + "-" + (first + data.length - 1) + "/" + length);
+            connection.setFixedLengthStreamingMode(data.length);
+            OutputStream outputStream = connection.getOutputStream();
+            try {
+                outputStream.write(data);
+            } finally {
+                FileUtils.closeQuietly(outputStream);
+            }
+            checkResponse(connection.getResponseCode());
+        } finally {
+            close(connection);
+        }
+    }
+
+    private void complete() throws IOException {
+        HttpURLConnection connection = open("POST");
+        try {
+            connection.setFixedLengthStreamingMode(0);
+            connection.getOutputStream().close();
+            checkResponse(connection.getResponseCode());
+        } finally {
+            close(connection);
+        }
+    }
+
+    private HttpURLConnection open(String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) mUrl.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setRequestMethod(method);
+        connection.setDoOutput(true);
+
+        if (mHeaders != null) {
+            for (Map.Entry<String, String> header : mHeaders.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+
+        synchronized (mConnections) {
+            mConnections.add(connection);
+        }
+        return connection;
+    }
+
+    private void close(HttpURLConnection connection) {
+        synchronized (mConnections) {
+            mConnections.remove(connection);
+        }
+        connection.disconnect();
+    }
+
+    private static void checkResponse(int responseCode) throws IOException {
+        if (responseCode / 100 == 2) {
+            return;
+        }
+        /* Timeouts, throttling and server errors are worth another go */
+        if (responseCode == 408 || responseCode == 429 || responseCode / 100 == 5) {
+            throw new IOException("Retryable HTTP response " + responseCode);
+        }
+        throw new HttpException(responseCode);
+    }
+
+    private int chunkCount(long length) {
+        return (int) ((length + mChunkBytes - 1) / mChunkBytes);
+    }
+
+    private int chunkLength(int chunk, long length) {
+        return (int) Math.min(mChunkBytes, length - (long) chunk * mChunkBytes);
+    }
+
+    /**
+     * @return the chunks acknowledged so far, or none if the record is missing or describes
+     * different bytes.
+     */
+    private BitSet readAcknowledged() {
+        BitSet acknowledged = new BitSet();
+        if (!mStateFile.isFile()) {
+            return acknowledged;
+        }
+
+        Properties state = new Properties();
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(mStateFile);
+            state.load(inputStream);
+        } catch (IOException e) {
+            return acknowledged;
+        } finally {
+            FileUtils.closeQuietly(inputStream);
+        }
+
+        if (!String.valueOf(mSourceFile.length()).equals(state.getProperty(STATE_LENGTH))
+                || !String.valueOf(mSourceFile.lastModified()).equals(state.getProperty(STATE_MODIFIED))
+                || !String.valueOf(mChunkBytes).equals(state.getProperty(STATE_CHUNK_BYTES))) {
+            return acknowledged;
+        }
+
+        String chunks = state.getProperty(STATE_ACKNOWLEDGED, "");
+        for (String chunk : chunks.split(",")) {
+            if (!chunk.isEmpty()) {
+                try {
+                    acknowledged.set(Integer.parseInt(chunk));
+                } catch (NumberFormatException e) {
+                    return new BitSet();
+                }
+            }
+        }
+        return acknowledged;
+    }
+
+    private void writeState(long length, BitSet acknowledged) throws IOException {
+        StringBuilder chunks = new StringBuilder();
+        for (int chunk = acknowledged.nextSetBit(0); chunk >= 0; chunk = acknowledged.nextSetBit(chunk + 1)) {
+            if (chunks.length() > 0) {
+                chunks.append(',');
+            }
+            chunks.append(chunk);
+        }
+
+        final Properties state = new Properties();
+        state.setProperty(STATE_LENGTH, String.valueOf(length));
+        state.setProperty(STATE_MODIFIED, String.valueOf(mSourceFile.lastModified()));
+        state.setProperty(STATE_CHUNK_BYTES, String.valueOf(mChunkBytes));
+        state.setProperty(STATE_ACKNOWLEDGED, chunks.toString());
+
+        FileUtils.writeAtomically(mStateFile, new FileUtils.StreamWriter() {
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                state.store(outputStream, null);
+            }
+        });
+    }
+}
@@ -0,0 +1,154 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.sendtodesktopapi;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.adobe.creativesdk.foundation.sendtodesktop.AdobeSendToDesktopErrorCode;
+import com.adobe.creativesdk.foundation.sendtodesktop.AdobeSendToDesktopException;
+import com.adobe.creativesdk.foundation.sendtodesktop.IAdobeSendToDesktopCallBack;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs {@link ChunkedUpload}s in the background and reports them through the same
+ * {@link IAdobeSendToDesktopCallBack} contract as {@code AdobeSendToDesktopApplication}.
+ *
+ * Failed attempts are retried with exponential backoff, each one resuming from the chunks already
+ * acknowledged, so a flaky connection costs a chunk rather than the whole file. Callbacks arrive
+ * on the main thread, except for uploads that were cancelled, which get none.
+ */
+public class ChunkedUploader {
+
+    private static final String TAG = ChunkedUploader.class.getSimpleName();
+
+    private static final int MAX_CONCURRENT_UPLOADS = 2;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+
+    private static ChunkedUploader sSharedInstance;
+
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_UPLOADS);
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    public static synchronized ChunkedUploader getSharedInstance() {
+        if (sSharedInstance == null) {
+            sSharedInstance = new ChunkedUploader();
+        }
+        return sSharedInstance;
+    }
+
+    ChunkedUploader() {
+    }
+
+    /**
+     * Uploads {@code file} to {@code url}, carrying on from whatever an earlier upload of the same
+     * file got acknowledged.
+     *
+     * @param headers extra request headers, such as authorization. May be null.
+     * @return the upload, to {@link ChunkedUpload#cancel cancel} it with.
+     */
+    public ChunkedUpload upload(final File file, URL url, Map<String, String> headers, final IAdobeSendToDesktopCallBack callBack) {
+        final ChunkedUpload upload = new ChunkedUpload(url, headers, file,
+                ChunkedUpload.DEFAULT_CHUNK_BYTES, ChunkedUpload.DEFAULT_PARALLELISM);
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                AdobeSendToDesktopException error = null;
+                try {
+                    runWithRetries(upload);
+                } catch (IOException e) {
+                    error = toSendToDesktopException(e);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Error uploading " + file.getName() + ": " + e);
+                    error = new AdobeSendToDesktopException(
+                            AdobeSendToDesktopErrorCode.ADOBE_SEND_TO_DESKTOP_ERROR_CODE_UNEXPECTED_RESPONSE, null, e.getMessage(), e);
+                }
+
+                final AdobeSendToDesktopException result = error;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (upload.isCancelled()) {
+                            return;
+                        }
+                        if (result == null) {
+                            callBack.onSuccess();
+                        } else {
+                            callBack.onError(result);
+                        }
+                    }
+                });
+            }
+        });
+        return upload;
+    }
+
+    private void runWithRetries(ChunkedUpload upload) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                upload.run(null);
+                return;
+            } catch (ChunkedUpload.HttpException | FileNotFoundException e) {
+                throw e;
+            } catch (IOException e) {
+                if (attempt >= MAX_ATTEMPTS || upload.isCancelled()) {
+                    throw e;
+                }
+
+                long backoffMillis = INITIAL_BACKOFF_MILLIS << (attempt - 1);
+                Log.w(TAG, "Upload attempt " + attempt + " failed with " + upload.getAcknowledgedChunks() + " of "
+                        + upload.getChunkCount() + " chunks in, retrying in " + backoffMillis + " ms: " + e.getMessage());
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static AdobeSendToDesktopException toSendToDesktopException(IOException e) {
+        AdobeSendToDesktopErrorCode errorCode;
+        if (e instanceof FileNotFoundException) {
+            errorCode = AdobeSendToDesktopErrorCode.ADOBE_SEND_TO_DESKTOP_ERROR_CODE_FILE_READ_FAILURE;
+        } else if (e instanceof ChunkedUpload.HttpException) {
+            errorCode = AdobeSendToDesktopErrorCode.ADOBE_SEND_TO_DESKTOP_ERROR_CODE_UNEXPECTED_RESPONSE;
+        } else {
+            /* Timeouts and dropped connections */
+            errorCode = AdobeSendToDesktopErrorCode.ADOBE_SEND_TO_DESKTOP_ERROR_CODE_RESPONSE_TIME_OUT;
+        }
+        return new AdobeSendToDesktopException(errorCode, null, e.getMessage(), e);
+    }
+}
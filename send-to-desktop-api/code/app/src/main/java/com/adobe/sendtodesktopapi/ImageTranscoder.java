@@ -0,0 +1,486 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.sendtodesktopapi;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.net.Uri;
+import android.os.Build;
+import android.os.SystemClock;
+import android.provider.OpenableColumns;
+import android.support.annotation.WorkerThread;
+import android.support.media.ExifInterface;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Prepares a picked image for sending: copies it out of the {@link ContentResolver}, works out
+ * what it really is from its magic bytes, and re-encodes it when that is worth doing.
+ *
+ * Images are re-encoded when they are over the {@link Options} size budget, or in a format the
+ * desktop apps handle poorly (HEIC, WebP, BMP). The result is downscaled to the long edge limit
+ * and compressed at the target quality, stepping the quality and then the size down until it fits
+ * the byte budget. JPEG EXIF orientation is baked into the pixels, since re-encoding drops it.
+ * Formats Android can't decode, such as PSD and TIFF, are sent as they are.
+ */
+public class ImageTranscoder {
+
+    private static final String TAG = ImageTranscoder.class.getSimpleName();
+
+    public static final String MIME_TYPE_UNKNOWN = "application/octet-stream";
+
+    private static final int HEADER_BYTES = 32;
+    private static final String DEFAULT_BASE_NAME = "image";
+    private static final int MAX_BASE_NAME_LENGTH = 100;
+    private static final int MIN_JPEG_QUALITY = 60;
+    private static final int JPEG_QUALITY_STEP = 10;
+    private static final float DOWNSCALE_STEP = 0.75f;
+    private static final int MAX_DOWNSCALE_STEPS = 4;
+
+    public static class Options {
+        final int maxLongEdge;
+        final long maxBytes;
+        final int jpegQuality;
+
+        /**
+         * @param maxLongEdge longest edge to send, in pixels.
+         * @param maxBytes size budget for the file that is sent.
+         * @param jpegQuality quality to re-encode JPEGs at, from 0 to 100.
+         */
+        public Options(int maxLongEdge, long maxBytes, int jpegQuality) {
+            this.maxLongEdge = maxLongEdge;
+            this.maxBytes = maxBytes;
+            this.jpegQuality = jpegQuality;
+        }
+    }
+
+    /**
+     * What {@link #copy} learned about an image while streaming it.
+     */
+    public static class Copy {
+        public final String mimeType;
+        /* What the image is called on the device, or null if the Uri doesn't say */
+        public final String displayName;
+        /* Hex SHA-256 of the original bytes */
+        public final String contentHash;
+        /* Time spent opening the Uri, and then reading it through */
+        public final long resolveMillis;
+        public final long readMillis;
+
+        Copy(String mimeType, String displayName, String contentHash, long resolveMillis, long readMillis) {
+            this.mimeType = mimeType;
+            this.displayName = displayName;
+            this.contentHash = contentHash;
+            this.resolveMillis = resolveMillis;
+            this.readMillis = readMillis;
+        }
+    }
+
+    private final ContentResolver mContentResolver;
+
+    public ImageTranscoder(ContentResolver contentResolver) {
+        mContentResolver = contentResolver;
+    }
+
+    /**
+     * Streams the image at {@code source} to {@code destination} as it is, sniffing its MIME type
+     * and hashing its contents on the way through.
+     */
+    @WorkerThread
+    public Copy copy(Uri source, File destination) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        String displayName = queryDisplayName(source);
+        InputStream inputStream = mContentResolver.openInputStream(source);
+        if (inputStream == null) {
+            throw new IOException("Unable to open " + source);
+        }
+        long opened = SystemClock.elapsedRealtime();
+
+        byte[] header = new byte[HEADER_BYTES];
+        int headerLength = copy(inputStream, destination, header, digest);
+
+        return new Copy(sniffMimeType(header, headerLength), displayName, toHex(digest.digest()),
+                opened - start, SystemClock.elapsedRealtime() - opened);
+    }
+
+    /**
+     * Re-encodes a {@link #copy copied} image in place if {@code options} call for it.
+     *
+     * @param options how far to shrink the image, or null to send it as it is.
+     * @return the MIME type of what is in {@code destination} afterwards.
+     */
+    @WorkerThread
+    public String transcode(File destination, String mimeType, Options options) throws IOException {
+        if (options == null || !canDecode(mimeType)) {
+            return mimeType;
+        }
+
+        /* 1) Check it against the budget without decoding any pixels */
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(destination.getPath(), bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return mimeType;
+        }
+
+        boolean overBudget = destination.length() > options.maxBytes
+                || Math.max(bounds.outWidth, bounds.outHeight) > options.maxLongEdge;
+        if (!overBudget && isDesktopFriendly(mimeType)) {
+            return mimeType;
+        }
+
+        /* 2) Re-encode */
+        long start = System.currentTimeMillis();
+        long originalLength = destination.length();
+        String encodedMimeType = reencode(destination, mimeType, bounds, options);
+        Log.d(TAG, mimeType + " " + originalLength + " bytes -> " + encodedMimeType + " " + destination.length()
+                + " bytes in " + (System.currentTimeMillis() - start) + " ms");
+
+        return encodedMimeType;
+    }
+
+    private String reencode(File file, String mimeType, BitmapFactory.Options bounds, Options options) throws IOException {
+        boolean jpeg = "image/jpeg".equals(mimeType);
+        int orientation = jpeg ? readOrientation(file) : ExifInterface.ORIENTATION_NORMAL;
+
+        /* Subsample while decoding, by as much as keeps the long edge at or over the limit, so at
+           most twice the limit is decoded rather than a whole camera original. JPEGs are opaque, so
+           they are decoded at half the bytes per pixel */
+        BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+        decodeOptions.inSampleSize = 1;
+        int longEdge = Math.max(bounds.outWidth, bounds.outHeight);
+        while (longEdge / (decodeOptions.inSampleSize * 2) >= options.maxLongEdge) {
+            decodeOptions.inSampleSize *= 2;
+        }
+        if (jpeg) {
+            decodeOptions.inPreferredConfig = Bitmap.Config.RGB_565;
+        }
+
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath(), decodeOptions);
+        if (bitmap == null) {
+            throw new IOException("Unable to decode " + mimeType);
+        }
+
+        /* Keep transparency if there is any, everything else goes out as JPEG */
+        boolean keepAlpha = "image/png".equals(mimeType) && bitmap.hasAlpha();
+        Bitmap.CompressFormat format = keepAlpha ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG;
+
+        float scale = Math.min(1f, (float) options.maxLongEdge / Math.max(bitmap.getWidth(), bitmap.getHeight()));
+        byte[] encoded;
+
+        /* Scale and rotate once, then keep shrinking that bitmap, so only one is ever held */
+        try {
+            bitmap = replace(bitmap, transform(bitmap, scale, orientation));
+            for (int step = 0; ; step++) {
+                int quality = options.jpegQuality;
+                encoded = compress(bitmap, format, quality);
+
+                while (encoded.length > options.maxBytes && format == Bitmap.CompressFormat.JPEG
+                        && quality - JPEG_QUALITY_STEP >= MIN_JPEG_QUALITY) {
+                    quality -= JPEG_QUALITY_STEP;
+                    encoded = compress(bitmap, format, quality);
+                }
+
+                if (encoded.length <= options.maxBytes || step == MAX_DOWNSCALE_STEPS) {
+                    break;
+                }
+                bitmap = replace(bitmap, transform(bitmap, DOWNSCALE_STEP, ExifInterface.ORIENTATION_NORMAL));
+            }
+        } finally {
+            bitmap.recycle();
+        }
+
+        FileUtils.writeAtomically(file, encoded);
+        return keepAlpha ? "image/png" : "image/jpeg";
+    }
+
+    /**
+     * Recycles {@code bitmap} if {@code transformed} is a new one.
+     */
+    private static Bitmap replace(Bitmap bitmap, Bitmap transformed) {
+        if (transformed != bitmap) {
+            bitmap.recycle();
+        }
+        return transformed;
+    }
+
+    /**
+     * Scales a bitmap and applies an EXIF orientation to it.
+     */
+    static Bitmap transform(Bitmap bitmap, float scale, int orientation) {
+        Matrix matrix = new Matrix();
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.postRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.postScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.postRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.postRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.postRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.postRotate(-90);
+                break;
+        }
+        if (scale < 1f) {
+            matrix.postScale(scale, scale);
+        }
+
+        if (scale >= 1f && orientation == ExifInterface.ORIENTATION_NORMAL) {
+            return bitmap;
+        }
+        return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+    }
+
+    /**
+     * Names a file for the desktop: {@code displayName} without its extension, followed by the
+     * extension of {@code mimeType}, which may differ from the original once it is re-encoded.
+     *
+     * @param displayName the name the image had on the device, or null.
+     */
+    public static String fileName(String displayName, String mimeType) {
+        String baseName = displayName != null ? displayName.replace('/', '_').replace('\0', '_').trim() : "";
+        String extension = extensionOf(mimeType);
+
+        /* Keep whatever extension an image we can't tell apart already had */
+        int dot = baseName.lastIndexOf('.');
+        if (extension == null && dot > 0) {
+            extension = baseName.substring(dot + 1);
+        }
+        if (dot > 0) {
+            baseName = baseName.substring(0, dot);
+        }
+
+        if (baseName.isEmpty() || baseName.startsWith(".")) {
+            baseName = DEFAULT_BASE_NAME;
+        } else if (baseName.length() > MAX_BASE_NAME_LENGTH) {
+            baseName = baseName.substring(0, MAX_BASE_NAME_LENGTH);
+        }
+        return extension != null ? baseName + "." + extension : baseName;
+    }
+
+    private static String extensionOf(String mimeType) {
+        switch (mimeType) {
+            case "image/jpeg":
+                return "jpg";
+            case "image/png":
+                return "png";
+            case "image/gif":
+                return "gif";
+            case "image/webp":
+                return "webp";
+            case "image/heic":
+                return "heic";
+            case "image/heif":
+                return "heif";
+            case "image/vnd.adobe.photoshop":
+                return "psd";
+            case "image/tiff":
+                return "tif";
+            case "image/bmp":
+                return "bmp";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Works out an image's MIME type from its first bytes.
+     *
+     * @return the MIME type, or {@link #MIME_TYPE_UNKNOWN}.
+     */
+    public static String sniffMimeType(byte[] header, int length) {
+        if (startsWith(header, length, 0, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(header, length, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "image/png";
+        }
+        if (startsWith(header, length, 0, 'G', 'I', 'F', '8')) {
+            return "image/gif";
+        }
+        if (startsWith(header, length, 0, 'R', 'I', 'F', 'F') && startsWith(header, length, 8, 'W', 'E', 'B', 'P')) {
+            return "image/webp";
+        }
+        if (startsWith(header, length, 4, 'f', 't', 'y', 'p') && length >= 12) {
+            String brand = new String(header, 8, 4);
+            if (brand.equals("heic") || brand.equals("heix") || brand.equals("hevc") || brand.equals("hevx")) {
+                return "image/heic";
+            }
+            if (brand.equals("mif1") || brand.equals("msf1") || brand.equals("heim") || brand.equals("heis")) {
+                return "image/heif";
+            }
+        }
+        if (startsWith(header, length, 0, '8', 'B', 'P', 'S')) {
+            return "image/vnd.adobe.photoshop";
+        }
+        if (startsWith(header, length, 0, 'I', 'I', 0x2A, 0x00) || startsWith(header, length, 0, 'M', 'M', 0x00, 0x2A)) {
+            return "image/tiff";
+        }
+        if (startsWith(header, length, 0, 'B', 'M')) {
+            return "image/bmp";
+        }
+        return MIME_TYPE_UNKNOWN;
+    }
+
+    private static boolean startsWith(byte[] header, int length, int offset, int... magic) {
+        if (length < offset + magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((header[offset + i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean canDecode(String mimeType) {
+        switch (mimeType) {
+            case "image/jpeg":
+            case "image/png":
+            case "image/webp":
+            case "image/bmp":
+                return true;
+            case "image/heic":
+            case "image/heif":
+                return Build.VERSION.SDK_INT >= 28; // BitmapFactory decodes HEIF from Android P
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isDesktopFriendly(String mimeType) {
+        return "image/jpeg".equals(mimeType) || "image/png".equals(mimeType);
+    }
+
+    private static int readOrientation(File file) {
+        try {
+            return new ExifInterface(file.getPath()).getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    private String queryDisplayName(Uri source) {
+        Cursor cursor = null;
+        try {
+            cursor = mContentResolver.query(source, new String[] {OpenableColumns.DISPLAY_NAME}, null, null, null);
+            if (cursor != null && cursor.moveToFirst()) {
+                int column = cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
+                if (column != -1 && !cursor.isNull(column)) {
+                    return cursor.getString(column);
+                }
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Unable to query the name of " + source + ": " + e.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+
+        /* file:// Uris and providers that don't know the name */
+        return source.getLastPathSegment();
+    }
+
+    private static byte[] compress(Bitmap bitmap, Bitmap.CompressFormat format, int quality) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        if (!bitmap.compress(format, quality, outputStream)) {
+            throw new IOException("Unable to encode " + format);
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Streams {@code source} to {@code destination} through {@code digest}, filling
+     * {@code header} with its first bytes. Closes {@code source}.
+     *
+     * @return how many header bytes were filled.
+     */
+    private static int copy(InputStream source, File destination, byte[] header, MessageDigest digest) throws IOException {
+        InputStream inputStream = source;
+        OutputStream outputStream = null;
+        try {
+            inputStream = new DigestInputStream(source, digest);
+            outputStream = new FileOutputStream(destination);
+
+            byte[] buffer = new byte[64 * 1024];
+            int headerLength = 0;
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                if (headerLength < header.length) {
+                    int headerRead = Math.min(read, header.length - headerLength);
+                    System.arraycopy(buffer, 0, header, headerLength, headerRead);
+                    headerLength += headerRead;
+                }
+                outputStream.write(buffer, 0, read);
+            }
+            return headerLength;
+        } finally {
+            FileUtils.closeQuietly(inputStream);
+            FileUtils.closeQuietly(outputStream);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(String.format("%02x", b & 0xff));
+        }
+        return builder.toString();
+    }
+}
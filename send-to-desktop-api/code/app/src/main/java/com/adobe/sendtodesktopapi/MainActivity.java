@@ -23,6 +23,8 @@
 
 package com.adobe.sendtodesktopapi;
 
+import android.content.ClipData;
+import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
@@ -42,11 +44,10 @@ import com.adobe.creativesdk.foundation.auth.AdobeAuthSessionHelper;
 import com.adobe.creativesdk.foundation.auth.AdobeAuthSessionLauncher;
 import com.adobe.creativesdk.foundation.auth.AdobeUXAuthManager;
 import com.adobe.creativesdk.foundation.sendtodesktop.AdobeCreativeCloudApplication;
-import com.adobe.creativesdk.foundation.sendtodesktop.AdobeSendToDesktopApplication;
 import com.adobe.creativesdk.foundation.sendtodesktop.AdobeSendToDesktopException;
-import com.adobe.creativesdk.foundation.sendtodesktop.IAdobeSendToDesktopCallBack;
 
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -54,6 +55,11 @@ public class MainActivity extends AppCompatActivity {
     static final int REQ_CODE_CSDK_USER_AUTH = 1001;
     static final int REQ_CODE_GALLERY_PICKER = 20;
 
+    /* Budget for what is sent, bigger images are downscaled and re-encoded first */
+    static final int MAX_SEND_LONG_EDGE = 4096;
+    static final long MAX_SEND_BYTES = 8L * 1024 * 1024;
+    static final int SEND_JPEG_QUALITY = 90;
+
     private AdobeUXAuthManager mUXAuthManager = AdobeUXAuthManager.getSharedAuthManager();
     private AdobeAuthSessionHelper mAuthSessionHelper;
 
@@ -62,7 +68,12 @@ public class MainActivity extends AppCompatActivity {
     private ImageView mSelectedImageView;
     private ProgressBar mSendToDesktopProgressBar;
 
-    private Uri mSelectedImageUri;
+    private List<Uri> mSelectedImageUris = new ArrayList<>();
+    /* Set once the selection was skipped as already sent, so sending it again forces it through */
+    private boolean mResendSelection;
+
+    private SendToDesktopQueue mSendToDesktopQueue;
+    private ThumbnailLoader mThumbnailLoader;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -71,6 +82,11 @@ public class MainActivity extends AppCompatActivity {
         Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
 
+        mSendToDesktopQueue = SendToDesktopQueue.getSharedInstance(this);
+        mSendToDesktopQueue.setTranscodeOptions(new ImageTranscoder.Options(MAX_SEND_LONG_EDGE, MAX_SEND_BYTES, SEND_JPEG_QUALITY));
+
+        mThumbnailLoader = ThumbnailLoader.getSharedInstance(this);
+
         mAuthSessionHelper = new AdobeAuthSessionHelper(mStatusCallback);
         mAuthSessionHelper.onCreate(savedInstanceState);
 
@@ -85,8 +101,9 @@ public class MainActivity extends AppCompatActivity {
                 Intent galleryPickerIntent = new Intent();
                 galleryPickerIntent.setType("image/*");
                 galleryPickerIntent.setAction(Intent.ACTION_GET_CONTENT);
+                galleryPickerIntent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
 
-                startActivityForResult(Intent.createChooser(galleryPickerIntent, "Select an Image"), REQ_CODE_GALLERY_PICKER); // Can be any int
+                startActivityForResult(Intent.createChooser(galleryPickerIntent, "Select Images"), REQ_CODE_GALLERY_PICKER); // Can be any int
             }
         };
         mOpenGalleryButton.setOnClickListener(openGalleryButtonListener);
@@ -95,21 +112,10 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onClick(View v) {
 
-                mSendToDesktopProgressBar.setVisibility(View.VISIBLE);
-
-
-                if (mSelectedImageUri != null) {
-                    try {
-                        sendToDesktop();
-                    } catch (IOException e) {
-                        e.printStackTrace();
-
-                        mSendToDesktopProgressBar.setVisibility(View.INVISIBLE);
-                        Toast.makeText(MainActivity.this, "Unable to send. Check your connection", Toast.LENGTH_LONG).show();
-                    }
+                if (!mSelectedImageUris.isEmpty()) {
+                    sendToDesktop();
                 }
                 else {
-                    mSendToDesktopProgressBar.setVisibility(View.INVISIBLE);
                     Toast.makeText(MainActivity.this, "Select an image from the Gallery", Toast.LENGTH_LONG).show();
                 }
             }
@@ -128,6 +134,9 @@ public class MainActivity extends AppCompatActivity {
                     login();
                 } else {
                     Log.d(TAG, "Already logged in!");
+
+                    /* Anything queued while signed out can go now */
+                    mSendToDesktopQueue.resume();
                 }
             }
         };
@@ -143,31 +152,66 @@ public class MainActivity extends AppCompatActivity {
         mUXAuthManager.login(authSessionLauncher);
     }
 
-    private void sendToDesktop() throws IOException {
+    private void sendToDesktop() {
 
         /* 1) Specify the Adobe desktop app to send to */
         AdobeCreativeCloudApplication creativeCloudApplication = AdobeCreativeCloudApplication.AdobePhotoshopCreativeCloud;
 
-        /* 2) Make a callback to handle success and error */
-        final IAdobeSendToDesktopCallBack sendToDesktopCallBack = new IAdobeSendToDesktopCallBack() {
-            @Override
-            public void onSuccess() {
-                mSendToDesktopProgressBar.setVisibility(View.INVISIBLE);
-                Toast.makeText(MainActivity.this, "Opening in Photoshop on your desktop!", Toast.LENGTH_LONG).show();
-            }
+        /* 2) Queue the images, they are sent as soon as there is a connection */
+        final List<Uri> selectedImageUris = mSelectedImageUris;
+        final int count = selectedImageUris.size();
+        final Context appContext = getApplicationContext();
+        boolean resend = mResendSelection;
+        mResendSelection = false;
 
+        mSendToDesktopQueue.enqueue(selectedImageUris, creativeCloudApplication, resend, new SendToDesktopQueue.BatchCallback() {
             @Override
-            public void onError(AdobeSendToDesktopException e) {
-                e.printStackTrace();
-                mSendToDesktopProgressBar.setVisibility(View.INVISIBLE);
-                Toast.makeText(MainActivity.this, "Failed! Check your internet connection.", Toast.LENGTH_LONG).show();
-            }
-        };
+            public void onBatchComplete(int succeeded, int failed, int skipped) {
+                /* 3) One toast for the whole selection */
+                String message;
+                if (count == 1 && skipped == 1) {
+                    message = "Already sent to Photoshop. Tap Send again to send it anyway.";
+                } else if (count == 1) {
+                    message = succeeded == 1 ? "Opening in Photoshop on your desktop!" : "Failed! Check your internet connection.";
+                } else if (skipped > 0) {
+                    message = "Sent " + succeeded + " of " + count + " images to Photoshop on your desktop, " + skipped
+                            + " already sent. Tap Send again to send them anyway.";
+                } else {
+                    message = "Sent " + succeeded + " of " + count + " images to Photoshop on your desktop";
+                }
+                Toast.makeText(appContext, message, Toast.LENGTH_LONG).show();
 
-        /* 3) Send the image to the desktop! */
-        AdobeSendToDesktopApplication.sendToDesktop(mSelectedImageUri, "image/jpeg", creativeCloudApplication, sendToDesktopCallBack);
+                /* 4) Sending the same selection again goes through regardless */
+                if (skipped > 0 && selectedImageUris == mSelectedImageUris) {
+                    mResendSelection = true;
+                }
+            }
+        });
     }
 
+    /* Tracks every queued send, results are reported per batch */
+    private SendToDesktopQueue.Listener mSendToDesktopQueueListener = new SendToDesktopQueue.Listener() {
+        @Override
+        public void onPendingCountChanged(int pending) {
+            mSendToDesktopProgressBar.setVisibility(pending > 0 ? View.VISIBLE : View.INVISIBLE);
+        }
+
+        @Override
+        public void onSendSucceeded(String id, AdobeCreativeCloudApplication application) {
+            Log.d(TAG, "Sent " + id);
+        }
+
+        @Override
+        public void onSendFailed(String id, AdobeCreativeCloudApplication application, AdobeSendToDesktopException e) {
+            e.printStackTrace();
+        }
+
+        @Override
+        public void onSendSkipped(String id, AdobeCreativeCloudApplication application) {
+            Log.d(TAG, "Skipped " + id + ", it was just sent");
+        }
+    };
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -184,12 +228,14 @@ public class MainActivity extends AppCompatActivity {
     protected void onStart() {
         super.onStart();
         mAuthSessionHelper.onStart();
+        mSendToDesktopQueue.setListener(mSendToDesktopQueueListener);
     }
 
     @Override
     protected void onStop() {
         super.onStop();
         mAuthSessionHelper.onStop();
+        mSendToDesktopQueue.setListener(null);
     }
 
     @Override
@@ -207,18 +253,39 @@ public class MainActivity extends AppCompatActivity {
             switch (requestCode) {
                 case REQ_CODE_CSDK_USER_AUTH:
                     Log.i(TAG, "User successfully logged in!");
+                    mSendToDesktopQueue.resume();
 
                     break;
 
                 case REQ_CODE_GALLERY_PICKER:
-                    mSelectedImageUri = data.getData();
-                    mSelectedImageView.setImageURI(mSelectedImageUri);
+                    mSelectedImageUris = selectedUris(data);
+                    mResendSelection = false;
+                    if (!mSelectedImageUris.isEmpty()) {
+                        /* Decoding a camera original here would stall the UI, so load a preview */
+                        int maxLongEdge = getResources().getDisplayMetrics().widthPixels;
+                        mThumbnailLoader.load(mSelectedImageUris.get(0), mSelectedImageView, maxLongEdge);
+                    }
 
                     break;
             }
         }
     }
 
+    /* Multiple picks come back as ClipData, a single one may only be in getData() */
+    private static List<Uri> selectedUris(Intent data) {
+        List<Uri> uris = new ArrayList<>();
+
+        ClipData clipData = data.getClipData();
+        if (clipData != null) {
+            for (int i = 0; i < clipData.getItemCount(); i++) {
+                uris.add(clipData.getItemAt(i).getUri());
+            }
+        } else if (data.getData() != null) {
+            uris.add(data.getData());
+        }
+        return uris;
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
@@ -43,6 +43,15 @@ public class MainApplication extends Application implements IAdobeAuthClientCred
     public void onCreate() {
         super.onCreate();
         AdobeCSDKFoundation.initializeCSDKFoundation(getApplicationContext());
+
+        /* Resume any sends a previous process didn't get to finish */
+        SendToDesktopQueue.getSharedInstance(this);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        ThumbnailLoader.getSharedInstance(this).trimMemory(level);
     }
 
     @Override
@@ -0,0 +1,230 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.sendtodesktopapi;
+
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only on-disk record of the sends waiting in a {@link SendToDesktopQueue}.
+ *
+ * Each change is one tab-separated line, synced to disk before the call returns: {@code add} when a
+ * send is queued, {@code retry} when an attempt fails and is rescheduled, and {@code remove} when it
+ * is done either way. Replaying the lines gives back the pending sends after a process restart; a
+ * torn last line is ignored. Once removed sends dominate, the journal is compacted down to one
+ * line per pending send.
+ *
+ * The journal keeps its own copy of every send it holds, updated under the same lock as the
+ * file, so compaction always rewrites exactly what has been appended so far.
+ */
+class SendJournal {
+
+    private static final String TAG = SendJournal.class.getSimpleName();
+
+    private static final String OP_ADD = "add";
+    private static final String OP_RETRY = "retry";
+    private static final String OP_REMOVE = "remove";
+
+    /* Compact once the journal has this many lines beyond what the pending sends need */
+    private static final int COMPACT_SLACK_LINES = 64;
+
+    static class Entry {
+        final String id;
+        final File file;
+        final String mimeType;
+        final String application;
+        /* Hash of the original image, or null for sends journaled before it was recorded */
+        final String contentHash;
+        int attempts;
+        long nextAttemptMillis;
+
+        Entry(String id, File file, String mimeType, String application, String contentHash) {
+            this.id = id;
+            this.file = file;
+            this.mimeType = mimeType;
+            this.application = application;
+            this.contentHash = contentHash;
+        }
+    }
+
+    private final File mJournalFile;
+    private int mLineCount;
+
+    /* Copies of the sends the journal holds, by ID, oldest first */
+    private final Map<String, Entry> mLive = new LinkedHashMap<>();
+
+    SendJournal(File journalFile) {
+        mJournalFile = journalFile;
+    }
+
+    /**
+     * Replays the journal.
+     *
+     * @return the pending sends, oldest first.
+     */
+    @WorkerThread
+    synchronized List<Entry> replay() {
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        mLineCount = 0;
+        mLive.clear();
+
+        if (!mJournalFile.isFile()) {
+            return new ArrayList<>();
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(mJournalFile), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                mLineCount++;
+                String[] fields = line.split("\t");
+
+                if (OP_ADD.equals(fields[0]) && (fields.length == 5 || fields.length == 6)) {
+                    String contentHash = fields.length == 6 ? fields[5] : null;
+                    entries.put(fields[1], new Entry(fields[1], new File(fields[2]), fields[3], fields[4], contentHash));
+                } else if (OP_RETRY.equals(fields[0]) && fields.length == 4) {
+                    Entry entry = entries.get(fields[1]);
+                    if (entry != null) {
+                        entry.attempts = Integer.parseInt(fields[2]);
+                        entry.nextAttemptMillis = Long.parseLong(fields[3]);
+                    }
+                } else if (OP_REMOVE.equals(fields[0]) && fields.length == 2) {
+                    entries.remove(fields[1]);
+                } else {
+                    Log.w(TAG, "Skipping malformed journal line");
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            Log.e(TAG, "Error replaying send journal: " + e.getMessage());
+        } finally {
+            FileUtils.closeQuietly(reader);
+        }
+
+        List<Entry> pending = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            mLive.put(entry.id, copyOf(entry));
+            pending.add(entry);
+        }
+        return pending;
+    }
+
+    @WorkerThread
+    synchronized void add(Entry entry) throws IOException {
+        append(addLine(entry));
+        if (entry.attempts > 0) {
+            append(retryLine(entry));
+        }
+        mLive.put(entry.id, copyOf(entry));
+    }
+
+    @WorkerThread
+    synchronized void retry(String id, int attempts, long nextAttemptMillis) throws IOException {
+        append(retryLine(id, attempts, nextAttemptMillis));
+
+        Entry live = mLive.get(id);
+        if (live != null) {
+            live.attempts = attempts;
+            live.nextAttemptMillis = nextAttemptMillis;
+        }
+    }
+
+    /**
+     * Records that a send is done, and compacts the journal if it has grown well past the sends
+     * that are left.
+     */
+    @WorkerThread
+    synchronized void remove(String id) throws IOException {
+        append(OP_REMOVE + "\t" + id);
+        mLive.remove(id);
+
+        if (mLineCount > mLive.size() * 2 + COMPACT_SLACK_LINES) {
+            compact();
+        }
+    }
+
+    private void compact() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        int lineCount = 0;
+        for (Entry entry : mLive.values()) {
+            builder.append(addLine(entry)).append('\n');
+            lineCount++;
+            if (entry.attempts > 0) {
+                builder.append(retryLine(entry)).append('\n');
+                lineCount++;
+            }
+        }
+
+        FileUtils.writeAtomically(mJournalFile, builder.toString().getBytes("UTF-8"));
+        mLineCount = lineCount;
+    }
+
+    private void append(String line) throws IOException {
+        File parent = mJournalFile.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent);
+        }
+
+        FileOutputStream outputStream = new FileOutputStream(mJournalFile, true);
+        try {
+            outputStream.write((line + "\n").getBytes("UTF-8"));
+            outputStream.getFD().sync();
+        } finally {
+            FileUtils.closeQuietly(outputStream);
+        }
+        mLineCount++;
+    }
+
+    private static Entry copyOf(Entry entry) {
+        Entry copy = new Entry(entry.id, entry.file, entry.mimeType, entry.application, entry.contentHash);
+        copy.attempts = entry.attempts;
+        copy.nextAttemptMillis = entry.nextAttemptMillis;
+        return copy;
+    }
+
+    private static String addLine(Entry entry) {
+        String line = OP_ADD + "\t" + entry.id + "\t" + entry.file.getPath() + "\t" + entry.mimeType + "\t" + entry.application;
+        return entry.contentHash != null ? line + "\t" + entry.contentHash : line;
+    }
+
+    private static String retryLine(Entry entry) {
+        return retryLine(entry.id, entry.attempts, entry.nextAttemptMillis);
+    }
+
+    private static String retryLine(String id, int attempts, long nextAttemptMillis) {
+        return OP_RETRY + "\t" + id + "\t" + attempts + "\t" + nextAttemptMillis;
+    }
+}
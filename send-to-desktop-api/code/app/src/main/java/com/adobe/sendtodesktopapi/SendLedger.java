@@ -0,0 +1,143 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.sendtodesktopapi;
+
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * On-disk record of recent successful sends, keyed by the content hash of the image and the app
+ * it went to.
+ *
+ * A {@link SendToDesktopQueue} checks it before uploading, so sending the same image to the same
+ * app twice within {@link #DUPLICATE_WINDOW_MILLIS} completes straight away instead of uploading
+ * the bytes again. The record is bounded to the most recent {@link #MAX_ENTRIES} sends and
+ * rewritten whole, through a temp file, on every change.
+ */
+class SendLedger {
+
+    private static final String TAG = SendLedger.class.getSimpleName();
+
+    static final long DUPLICATE_WINDOW_MILLIS = 15 * 60 * 1000;
+    static final int MAX_ENTRIES = 256;
+
+    private final File mLedgerFile;
+    /* Send time by hash and app, oldest first */
+    private Map<String, Long> mSentAt;
+
+    SendLedger(File ledgerFile) {
+        mLedgerFile = ledgerFile;
+    }
+
+    /**
+     * @return whether {@code contentHash} was sent to {@code application} recently.
+     */
+    @WorkerThread
+    synchronized boolean wasSentRecently(String contentHash, String application) {
+        Long sentAt = load().get(keyFor(contentHash, application));
+        return sentAt != null && System.currentTimeMillis() - sentAt < DUPLICATE_WINDOW_MILLIS;
+    }
+
+    @WorkerThread
+    synchronized void record(String contentHash, String application) {
+        Map<String, Long> sentAt = load();
+        String key = keyFor(contentHash, application);
+
+        /* Re-insert so the map stays in send order */
+        sentAt.remove(key);
+        sentAt.put(key, System.currentTimeMillis());
+
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Long>> iterator = sentAt.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            if (sentAt.size() <= MAX_ENTRIES && now - entry.getValue() < DUPLICATE_WINDOW_MILLIS) {
+                break;
+            }
+            iterator.remove();
+        }
+
+        try {
+            save(sentAt);
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving send ledger: " + e.getMessage());
+        }
+    }
+
+    private Map<String, Long> load() {
+        if (mSentAt != null) {
+            return mSentAt;
+        }
+        mSentAt = new LinkedHashMap<>();
+
+        if (!mLedgerFile.isFile()) {
+            return mSentAt;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(mLedgerFile), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length == 3) {
+                    mSentAt.put(keyFor(fields[0], fields[1]), Long.parseLong(fields[2]));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            Log.e(TAG, "Error reading send ledger: " + e.getMessage());
+        } finally {
+            FileUtils.closeQuietly(reader);
+        }
+        return mSentAt;
+    }
+
+    private void save(Map<String, Long> sentAt) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Long> entry : sentAt.entrySet()) {
+            builder.append(entry.getKey()).append('\t').append(entry.getValue()).append('\n');
+        }
+
+        File parent = mLedgerFile.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent);
+        }
+
+        FileUtils.writeAtomically(mLedgerFile, builder.toString().getBytes("UTF-8"));
+    }
+
+    private static String keyFor(String contentHash, String application) {
+        return contentHash + "\t" + application;
+    }
+}
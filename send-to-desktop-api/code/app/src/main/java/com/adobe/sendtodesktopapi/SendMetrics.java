@@ -0,0 +1,182 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.sendtodesktopapi;
+
+import android.support.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-process timings and sizes for sends to the desktop.
+ *
+ * Every metric keeps its most recent {@link #WINDOW_SIZE} samples in a ring, and
+ * {@link #getSummary} reports their p50, p95 and p99, so the numbers follow the app as it is used
+ * rather than averaging over its whole life. Outcomes are plain counters, so failures and sends
+ * skipped as duplicates show up without skewing the timings. {@link #dump} writes every summary
+ * and counter to a text file for pulling off a device.
+ */
+public class SendMetrics {
+
+    /* Phases of a send, in milliseconds */
+    public static final String RESOLVE_MILLIS = "resolve_ms";
+    public static final String READ_MILLIS = "read_ms";
+    public static final String TRANSCODE_MILLIS = "transcode_ms";
+    /* From handing the file to the SDK until it acknowledges the send */
+    public static final String UPLOAD_MILLIS = "upload_ms";
+    /* From queueing an image until its send is acknowledged, retries and waiting included */
+    public static final String TOTAL_MILLIS = "total_ms";
+    /* From queueing an image until its send is given up on */
+    public static final String FAILED_TOTAL_MILLIS = "failed_total_ms";
+
+    public static final String BYTES_SENT = "bytes_sent";
+    public static final String THROUGHPUT_BYTES_PER_SECOND = "throughput_bps";
+
+    /* Counters */
+    public static final String SENDS_SUCCEEDED = "sends_succeeded";
+    public static final String SENDS_FAILED = "sends_failed";
+    /* Sends skipped because the same image just went to the same app */
+    public static final String SENDS_DUPLICATE = "sends_duplicate";
+    /* Upload attempts that failed, whether or not the send was retried */
+    public static final String UPLOADS_FAILED = "uploads_failed";
+
+    static final int WINDOW_SIZE = 256;
+
+    public static class Summary {
+        public final int count;
+        public final long p50;
+        public final long p95;
+        public final long p99;
+        public final long max;
+
+        Summary(int count, long p50, long p95, long p99, long max) {
+            this.count = count;
+            this.p50 = p50;
+            this.p95 = p95;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + " p50=" + p50 + " p95=" + p95 + " p99=" + p99 + " max=" + max;
+        }
+    }
+
+    private static class Window {
+        final long[] samples = new long[WINDOW_SIZE];
+        int count;
+        int next;
+
+        void add(long sample) {
+            samples[next] = sample;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+    }
+
+    private final Map<String, Window> mWindows = new TreeMap<>();
+    private final Map<String, Long> mCounters = new TreeMap<>();
+
+    public synchronized void record(String metric, long value) {
+        Window window = mWindows.get(metric);
+        if (window == null) {
+            window = new Window();
+            mWindows.put(metric, window);
+        }
+        window.add(value);
+    }
+
+    public synchronized void increment(String counter) {
+        Long count = mCounters.get(counter);
+        mCounters.put(counter, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * @return how many times a counter has been incremented in this process.
+     */
+    public synchronized long getCount(String counter) {
+        Long count = mCounters.get(counter);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * @return the percentiles of a metric's recent samples, or null if it has none.
+     */
+    public synchronized Summary getSummary(String metric) {
+        Window window = mWindows.get(metric);
+        if (window == null || window.count == 0) {
+            return null;
+        }
+
+        long[] sorted = Arrays.copyOf(window.samples, window.count);
+        Arrays.sort(sorted);
+        return new Summary(sorted.length, percentile(sorted, 50), percentile(sorted, 95), percentile(sorted, 99),
+                sorted[sorted.length - 1]);
+    }
+
+    /**
+     * @return the summary of every metric with samples, by name.
+     */
+    public synchronized Map<String, Summary> getSummaries() {
+        Map<String, Summary> summaries = new TreeMap<>();
+        for (String metric : mWindows.keySet()) {
+            Summary summary = getSummary(metric);
+            if (summary != null) {
+                summaries.put(metric, summary);
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * Writes one line per metric and per counter to {@code file}, replacing what was there.
+     */
+    @WorkerThread
+    public void dump(File file) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        Map<String, Long> counters;
+        synchronized (this) {
+            counters = new TreeMap<>(mCounters);
+        }
+        for (Map.Entry<String, Summary> summary : getSummaries().entrySet()) {
+            builder.append(summary.getKey()).append(' ').append(summary.getValue()).append('\n');
+        }
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            builder.append(counter.getKey()).append(" count=").append(counter.getValue()).append('\n');
+        }
+
+        FileUtils.writeAtomically(file, builder.toString().getBytes("UTF-8"));
+    }
+
+    /* Nearest-rank percentile */
+    private static long percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
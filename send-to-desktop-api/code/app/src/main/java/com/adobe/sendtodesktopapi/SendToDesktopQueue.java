@@ -0,0 +1,777 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.sendtodesktopapi;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import com.adobe.creativesdk.foundation.auth.AdobeUXAuthManager;
+import com.adobe.creativesdk.foundation.sendtodesktop.AdobeCreativeCloudApplication;
+import com.adobe.creativesdk.foundation.sendtodesktop.AdobeSendToDesktopApplication;
+import com.adobe.creativesdk.foundation.sendtodesktop.AdobeSendToDesktopErrorCode;
+import com.adobe.creativesdk.foundation.sendtodesktop.AdobeSendToDesktopException;
+import com.adobe.creativesdk.foundation.sendtodesktop.IAdobeSendToDesktopCallBack;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A durable queue of sends to Creative Cloud desktop apps.
+ *
+ * Queued images are copied into the app's files directory straight away, since the picker's
+ * grant on the original Uri doesn't outlive the process, shrunk by an {@link ImageTranscoder} if
+ * so configured, and recorded in a {@link SendJournal}. An image bound for several apps is copied
+ * once and its file shared by the sends to each of them.
+ * Transcoding runs on a small pool, so while one image uploads the next ones are already being
+ * prepared, and a worker on the main thread keeps a bounded number of sends in flight. Batches
+ * report a single aggregate result once every send in them is done. Failed sends are retried with
+ * exponential backoff, and the worker waits for a connection and a signed in user before trying.
+ * Images that were sent to the same app moments ago, going by a {@link SendLedger} of content
+ * hashes, are skipped rather than uploaded again, unless they are queued to be resent.
+ * How long each phase of a send takes, how many bytes it moves, and how it ended is kept in
+ * {@link SendMetrics}.
+ * Whatever is still queued when the process dies is picked up again the next time it starts.
+ */
+public class SendToDesktopQueue {
+
+    private static final String TAG = SendToDesktopQueue.class.getSimpleName();
+
+    private static final String OUTBOX_DIR_NAME = "outbox";
+    private static final String DOWNLOAD_FILE_NAME = "download";
+    private static final String JOURNAL_FILE_NAME = "send-journal";
+    private static final String LEDGER_FILE_NAME = "send-ledger";
+
+    private static final int MAX_CONCURRENT_TRANSCODES = 2;
+    private static final int MAX_CONCURRENT_SENDS = 2;
+
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long INITIAL_BACKOFF_MILLIS = 2 * 1000;
+    private static final long MAX_BACKOFF_MILLIS = 10 * 60 * 1000;
+
+    public interface Listener {
+        void onPendingCountChanged(int pending);
+
+        void onSendSucceeded(String id, AdobeCreativeCloudApplication application);
+
+        /**
+         * Called once a send has failed for good, either with an error retrying won't fix or after
+         * running out of attempts.
+         */
+        void onSendFailed(String id, AdobeCreativeCloudApplication application, AdobeSendToDesktopException e);
+
+        /**
+         * Called when a send is dropped as a repeat of an image just sent to the same app. Nothing
+         * is uploaded and nothing opens on the desktop; queue it again with {@code resend} to send
+         * it anyway.
+         */
+        void onSendSkipped(String id, AdobeCreativeCloudApplication application);
+    }
+
+    public interface BatchCallback {
+        void onBatchComplete(int succeeded, int failed, int skipped);
+    }
+
+    private enum Outcome {
+        SUCCEEDED, FAILED, SKIPPED
+    }
+
+    private static class Batch {
+        final BatchCallback callback;
+        int remaining;
+        int succeeded;
+        int failed;
+        int skipped;
+
+        Batch(BatchCallback callback, int size) {
+            this.callback = callback;
+            this.remaining = size;
+        }
+    }
+
+    private static SendToDesktopQueue sSharedInstance;
+
+    private final Context mContext;
+    private final File mOutboxDir;
+    private final SendJournal mJournal;
+    private final SendLedger mLedger;
+    private final ImageTranscoder mTranscoder;
+    private final ConnectivityManager mConnectivityManager;
+    private final ExecutorService mDiskExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService mTranscodeExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_TRANSCODES);
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Random mRandom = new Random();
+    private final SendMetrics mMetrics = new SendMetrics();
+    /* Outbox directories of images that are being copied and transcoded, but aren't journaled yet */
+    private final Set<File> mPreparing = Collections.synchronizedSet(new HashSet<File>());
+
+    /* Only touched on the main thread */
+    private final List<SendJournal.Entry> mPending = new ArrayList<>();
+    private final List<SendJournal.Entry> mSending = new ArrayList<>();
+    private final Map<String, Batch> mBatchOfSend = new HashMap<>();
+    private final Map<String, Long> mQueuedAt = new HashMap<>();
+    private boolean mLoaded;
+    private boolean mWaitingForNetwork;
+    private Listener mListener;
+    private ImageTranscoder.Options mTranscodeOptions;
+    private File mMetricsDumpFile;
+
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    private final BroadcastReceiver mConnectivityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (isConnected()) {
+                Log.d(TAG, "Back online, resuming sends");
+                drain();
+            }
+        }
+    };
+
+    public static synchronized SendToDesktopQueue getSharedInstance(Context context) {
+        if (sSharedInstance == null) {
+            sSharedInstance = new SendToDesktopQueue(context.getApplicationContext());
+        }
+        return sSharedInstance;
+    }
+
+    private SendToDesktopQueue(Context context) {
+        mContext = context;
+        mOutboxDir = new File(context.getFilesDir(), OUTBOX_DIR_NAME);
+        mJournal = new SendJournal(new File(context.getFilesDir(), JOURNAL_FILE_NAME));
+        mLedger = new SendLedger(new File(context.getFilesDir(), LEDGER_FILE_NAME));
+        mTranscoder = new ImageTranscoder(context.getContentResolver());
+        mConnectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+
+        /* Pick up whatever the last process left behind */
+        mDiskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<SendJournal.Entry> entries = mJournal.replay();
+                sweepOutbox(entries);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mPending.addAll(0, entries);
+                        mLoaded = true;
+                        if (!entries.isEmpty()) {
+                            Log.d(TAG, "Resuming " + entries.size() + " queued send(s)");
+                            notifyPendingCountChanged();
+                        }
+                        drain();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Sets the listener, called on the main thread. Pass null to stop listening.
+     */
+    public void setListener(Listener listener) {
+        mListener = listener;
+        if (listener != null) {
+            listener.onPendingCountChanged(getPendingCount());
+        }
+    }
+
+    public int getPendingCount() {
+        return mPending.size();
+    }
+
+    /**
+     * Sets how queued images are shrunk before they are sent, or null to send them as they are.
+     * Applies to images queued from then on.
+     */
+    public void setTranscodeOptions(ImageTranscoder.Options transcodeOptions) {
+        mTranscodeOptions = transcodeOptions;
+    }
+
+    /**
+     * @return timings and sizes of the sends made since the process started.
+     */
+    public SendMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Sets a file to rewrite with the {@link SendMetrics} summaries after every send that
+     * finishes, or null to stop.
+     */
+    public void setMetricsDumpFile(File metricsDumpFile) {
+        mMetricsDumpFile = metricsDumpFile;
+    }
+
+    /**
+     * Queues an image to be sent. Its MIME type is sniffed from its contents. Call it on the main
+     * thread.
+     *
+     * @return an id for the send, as passed to the {@link Listener}.
+     */
+    public String enqueue(Uri source, AdobeCreativeCloudApplication application) {
+        return enqueue(source, EnumSet.of(application), false).get(application);
+    }
+
+    /**
+     * Queues an image to be opened in several apps. It is copied and transcoded once, and the sends
+     * to each app go out side by side and are reported to the {@link Listener} separately. Call it
+     * on the main thread.
+     *
+     * @return an id for the send to each app.
+     */
+    public Map<AdobeCreativeCloudApplication, String> enqueue(Uri source, Set<AdobeCreativeCloudApplication> applications) {
+        return enqueue(source, applications, false);
+    }
+
+    /**
+     * Queues an image to be opened in several apps, as {@link #enqueue(Uri, Set)}.
+     *
+     * @param resend true to send the image even if it was just sent to the same apps.
+     * @return an id for the send to each app.
+     */
+    public Map<AdobeCreativeCloudApplication, String> enqueue(final Uri source, final Set<AdobeCreativeCloudApplication> applications,
+                                                              final boolean resend) {
+        final Map<AdobeCreativeCloudApplication, String> ids = new EnumMap<>(AdobeCreativeCloudApplication.class);
+        for (AdobeCreativeCloudApplication application : applications) {
+            String id = UUID.randomUUID().toString();
+            ids.put(application, id);
+            mQueuedAt.put(id, SystemClock.elapsedRealtime());
+        }
+        final ImageTranscoder.Options transcodeOptions = mTranscodeOptions;
+
+        /* 1) Copy, check for repeats and transcode on the pool, once for every app */
+        mTranscodeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                /* Each image gets a directory of its own, so it can keep its name on the desktop */
+                final File sendDir = new File(mOutboxDir, UUID.randomUUID().toString());
+                final File file;
+                final ImageTranscoder.Copy copy;
+                final String mimeType;
+                final Map<AdobeCreativeCloudApplication, String> toSend = new EnumMap<>(ids);
+                mPreparing.add(sendDir);
+                try {
+                    if (!sendDir.isDirectory() && !sendDir.mkdirs()) {
+                        throw new IOException("Unable to create " + sendDir);
+                    }
+                    File download = new File(sendDir, DOWNLOAD_FILE_NAME);
+                    copy = mTranscoder.copy(source, download);
+                    mMetrics.record(SendMetrics.RESOLVE_MILLIS, copy.resolveMillis);
+                    mMetrics.record(SendMetrics.READ_MILLIS, copy.readMillis);
+
+                    /* The same image just went to the same app, skip it unless asked to send it again */
+                    for (Map.Entry<AdobeCreativeCloudApplication, String> id : ids.entrySet()) {
+                        if (!resend && mLedger.wasSentRecently(copy.contentHash, id.getKey().name())) {
+                            Log.d(TAG, "Send " + id.getValue() + " is a repeat of a recent send, skipping the upload");
+                            toSend.remove(id.getKey());
+                            postSkipped(id.getValue(), id.getKey());
+                        }
+                    }
+                    if (toSend.isEmpty()) {
+                        FileUtils.deleteRecursively(sendDir);
+                        mPreparing.remove(sendDir);
+                        return;
+                    }
+
+                    long transcodeStart = SystemClock.elapsedRealtime();
+                    mimeType = mTranscoder.transcode(download, copy.mimeType, transcodeOptions);
+                    mMetrics.record(SendMetrics.TRANSCODE_MILLIS, SystemClock.elapsedRealtime() - transcodeStart);
+
+                    /* The extension has to match what the image is after transcoding */
+                    file = new File(sendDir, ImageTranscoder.fileName(copy.displayName, mimeType));
+                    if (!download.renameTo(file)) {
+                        throw new IOException("Unable to rename " + download + " to " + file.getName());
+                    }
+                } catch (IOException e) {
+                    FileUtils.deleteRecursively(sendDir);
+                    mPreparing.remove(sendDir);
+                    postPrepareFailure(toSend, e);
+                    return;
+                } catch (OutOfMemoryError | RuntimeException e) {
+                    /* An image too big to re-encode, or a provider that blew up, fails just this send */
+                    Log.e(TAG, "Error preparing " + source + ": " + e);
+                    FileUtils.deleteRecursively(sendDir);
+                    mPreparing.remove(sendDir);
+                    postPrepareFailure(toSend, new IOException("Unable to prepare " + source, e));
+                    return;
+                }
+
+                /* 2) Journal them on the disk thread, so they are never replayed twice */
+                mDiskExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        /* The outbox sweep ran first on this thread, so it is past the directory */
+                        mPreparing.remove(sendDir);
+
+                        final List<SendJournal.Entry> entries = new ArrayList<>();
+                        try {
+                            for (Map.Entry<AdobeCreativeCloudApplication, String> id : toSend.entrySet()) {
+                                SendJournal.Entry entry = new SendJournal.Entry(id.getValue(), file, mimeType, id.getKey().name(), copy.contentHash);
+                                mJournal.add(entry);
+                                entries.add(entry);
+                            }
+                        } catch (IOException e) {
+                            /* The ones already journaled go ahead, the rest fail */
+                            Map<AdobeCreativeCloudApplication, String> unjournaled = new EnumMap<>(toSend);
+                            for (SendJournal.Entry entry : entries) {
+                                unjournaled.remove(AdobeCreativeCloudApplication.valueOf(entry.application));
+                            }
+                            postPrepareFailure(unjournaled, e);
+                            if (entries.isEmpty()) {
+                                FileUtils.deleteRecursively(sendDir);
+                                return;
+                            }
+                        }
+
+                        mMainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                mPending.addAll(entries);
+                                notifyPendingCountChanged();
+                                drain();
+                            }
+                        });
+                    }
+                });
+            }
+        });
+
+        return ids;
+    }
+
+    /**
+     * Queues several images to be sent together. They are transcoded and sent in a pipeline, and
+     * {@code callback} hears once, on the main thread, when every one of them is done.
+     *
+     * @return an id for each send, in the same order as {@code sources}.
+     */
+    public List<String> enqueue(List<Uri> sources, AdobeCreativeCloudApplication application, BatchCallback callback) {
+        return enqueue(sources, application, false, callback);
+    }
+
+    /**
+     * Queues several images to be sent together, as {@link #enqueue(List, AdobeCreativeCloudApplication, BatchCallback)}.
+     *
+     * @param resend true to send the images even if they were just sent to the same app.
+     */
+    public List<String> enqueue(List<Uri> sources, AdobeCreativeCloudApplication application, boolean resend, BatchCallback callback) {
+        List<String> ids = new ArrayList<>(sources.size());
+        for (Map<AdobeCreativeCloudApplication, String> idsByApplication : enqueue(sources, EnumSet.of(application), resend, callback)) {
+            ids.add(idsByApplication.get(application));
+        }
+        return ids;
+    }
+
+    /**
+     * Queues several images to be opened in several apps. {@code callback} hears once, on the main
+     * thread, when every send of every image is done.
+     *
+     * @return the ids of the sends of each image, in the same order as {@code sources}.
+     */
+    public List<Map<AdobeCreativeCloudApplication, String>> enqueue(List<Uri> sources, Set<AdobeCreativeCloudApplication> applications,
+                                                                   BatchCallback callback) {
+        return enqueue(sources, applications, false, callback);
+    }
+
+    /**
+     * Queues several images to be opened in several apps, as {@link #enqueue(List, Set, BatchCallback)}.
+     *
+     * @param resend true to send the images even if they were just sent to the same apps.
+     */
+    public List<Map<AdobeCreativeCloudApplication, String>> enqueue(List<Uri> sources, Set<AdobeCreativeCloudApplication> applications,
+                                                                   boolean resend, BatchCallback callback) {
+        Batch batch = new Batch(callback, sources.size() * applications.size());
+        List<Map<AdobeCreativeCloudApplication, String>> ids = new ArrayList<>(sources.size());
+
+        for (Uri source : sources) {
+            Map<AdobeCreativeCloudApplication, String> idsByApplication = enqueue(source, applications, resend);
+            for (String id : idsByApplication.values()) {
+                mBatchOfSend.put(id, batch);
+            }
+            ids.add(idsByApplication);
+        }
+        return ids;
+    }
+
+    /**
+     * Gives the worker a nudge, for instance right after the user signs in.
+     */
+    public void resume() {
+        drain();
+    }
+
+    private void drain() {
+        mMainHandler.removeCallbacks(mDrain);
+
+        if (!mLoaded || mSending.size() >= MAX_CONCURRENT_SENDS || mPending.isEmpty()) {
+            if (mPending.isEmpty()) {
+                stopWaitingForNetwork();
+            }
+            return;
+        }
+
+        /* 1) Wait for a connection, and for someone to send as */
+        if (!isConnected()) {
+            startWaitingForNetwork();
+            return;
+        }
+        stopWaitingForNetwork();
+
+        if (!AdobeUXAuthManager.getSharedAuthManager().isAuthenticated()) {
+            Log.d(TAG, "Waiting for sign in before sending");
+            return;
+        }
+
+        /* 2) Fill the free slots with the sends that are due first, or wait until one is */
+        while (mSending.size() < MAX_CONCURRENT_SENDS) {
+            SendJournal.Entry next = null;
+            for (SendJournal.Entry entry : mPending) {
+                if (!mSending.contains(entry) && (next == null || entry.nextAttemptMillis < next.nextAttemptMillis)) {
+                    next = entry;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+
+            long waitMillis = next.nextAttemptMillis - System.currentTimeMillis();
+            if (waitMillis > 0) {
+                mMainHandler.postDelayed(mDrain, waitMillis);
+                return;
+            }
+
+            send(next);
+        }
+    }
+
+    private void send(final SendJournal.Entry entry) {
+        mSending.add(entry);
+        final AdobeCreativeCloudApplication application = AdobeCreativeCloudApplication.valueOf(entry.application);
+        final long uploadStart = SystemClock.elapsedRealtime();
+
+        IAdobeSendToDesktopCallBack callBack = new IAdobeSendToDesktopCallBack() {
+            @Override
+            public void onSuccess() {
+                mSending.remove(entry);
+                recordUpload(entry, SystemClock.elapsedRealtime() - uploadStart);
+                finish(entry, true);
+                notifySucceeded(entry.id, application);
+                drain();
+            }
+
+            @Override
+            public void onError(AdobeSendToDesktopException e) {
+                mSending.remove(entry);
+                onSendError(entry, application, e);
+                drain();
+            }
+        };
+
+        try {
+            AdobeSendToDesktopApplication.sendToDesktop(Uri.fromFile(entry.file), entry.mimeType, application, callBack);
+        } catch (IOException e) {
+            callBack.onError(new AdobeSendToDesktopException(
+                    AdobeSendToDesktopErrorCode.ADOBE_SEND_TO_DESKTOP_ERROR_CODE_FILE_READ_FAILURE, null, e.getMessage(), e));
+        }
+    }
+
+    private void onSendError(final SendJournal.Entry entry, AdobeCreativeCloudApplication application, AdobeSendToDesktopException e) {
+        entry.attempts++;
+        mMetrics.increment(SendMetrics.UPLOADS_FAILED);
+
+        if (!isTransient(e) || entry.attempts >= MAX_ATTEMPTS) {
+            Log.e(TAG, "Giving up on send " + entry.id + " after " + entry.attempts + " attempt(s)");
+            finish(entry, false);
+            notifyFailed(entry.id, application, e);
+            return;
+        }
+
+        /* Exponential backoff with some jitter, so a flaky network isn't hit in lockstep */
+        long backoffMillis = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << (entry.attempts - 1));
+        backoffMillis += (long) (backoffMillis * 0.2 * (mRandom.nextDouble() * 2 - 1));
+        entry.nextAttemptMillis = System.currentTimeMillis() + backoffMillis;
+        Log.w(TAG, "Send " + entry.id + " failed, retrying in " + backoffMillis + " ms");
+
+        final int attempts = entry.attempts;
+        final long nextAttemptMillis = entry.nextAttemptMillis;
+        mDiskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mJournal.retry(entry.id, attempts, nextAttemptMillis);
+                } catch (IOException e) {
+                    Log.e(TAG, "Error journaling retry: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    private void finish(final SendJournal.Entry entry, final boolean succeeded) {
+        mPending.remove(entry);
+        notifyPendingCountChanged();
+
+        /* Sends of one image to several apps share its file */
+        boolean fileShared = false;
+        for (SendJournal.Entry other : mPending) {
+            fileShared |= other.file.equals(entry.file);
+        }
+        final boolean deleteFile = !fileShared;
+
+        mDiskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mJournal.remove(entry.id);
+                } catch (IOException e) {
+                    Log.e(TAG, "Error journaling removal: " + e.getMessage());
+                }
+                if (succeeded && entry.contentHash != null) {
+                    mLedger.record(entry.contentHash, entry.application);
+                }
+                if (deleteFile) {
+                    deleteSendFile(entry.file);
+                }
+            }
+        });
+    }
+
+    /**
+     * Deletes a send's file, along with the directory it was given in the outbox.
+     */
+    @WorkerThread
+    private void deleteSendFile(File file) {
+        /* Sends journaled before each got a directory of their own sit right in the outbox */
+        File sendDir = file.getParentFile();
+        if (mOutboxDir.equals(sendDir)) {
+            file.delete();
+        } else {
+            FileUtils.deleteRecursively(sendDir);
+        }
+    }
+
+    /**
+     * Deletes whatever in the outbox no pending send refers to, such as the copy of an image the
+     * process died with before its sends were journaled.
+     */
+    @WorkerThread
+    private void sweepOutbox(List<SendJournal.Entry> entries) {
+        File[] files = mOutboxDir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Set<File> referenced = new HashSet<>();
+        for (SendJournal.Entry entry : entries) {
+            referenced.add(entry.file);
+            referenced.add(entry.file.getParentFile());
+        }
+        for (File file : files) {
+            if (!referenced.contains(file) && !mPreparing.contains(file)) {
+                Log.d(TAG, "Deleting " + file.getName() + " from the outbox, no send refers to it");
+                FileUtils.deleteRecursively(file);
+            }
+        }
+    }
+
+    private void postSkipped(final String id, final AdobeCreativeCloudApplication application) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                notifySkipped(id, application);
+            }
+        });
+    }
+
+    private void postPrepareFailure(Map<AdobeCreativeCloudApplication, String> ids, IOException e) {
+        final Map<AdobeCreativeCloudApplication, String> failed = new EnumMap<>(ids);
+        final AdobeSendToDesktopException error = new AdobeSendToDesktopException(
+                AdobeSendToDesktopErrorCode.ADOBE_SEND_TO_DESKTOP_ERROR_CODE_FILE_READ_FAILURE, null, e.getMessage(), e);
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Map.Entry<AdobeCreativeCloudApplication, String> id : failed.entrySet()) {
+                    notifyFailed(id.getValue(), id.getKey(), error);
+                }
+            }
+        });
+    }
+
+    private void recordUpload(SendJournal.Entry entry, long uploadMillis) {
+        long bytes = entry.file.length();
+        long bytesPerSecond = bytes * 1000 / Math.max(1, uploadMillis);
+        Log.d(TAG, "Sent " + entry.id + ": " + bytes + " bytes in " + uploadMillis + " ms (" + bytesPerSecond + " B/s)");
+
+        mMetrics.record(SendMetrics.UPLOAD_MILLIS, uploadMillis);
+        mMetrics.record(SendMetrics.BYTES_SENT, bytes);
+        mMetrics.record(SendMetrics.THROUGHPUT_BYTES_PER_SECOND, bytesPerSecond);
+    }
+
+    private void notifySucceeded(String id, AdobeCreativeCloudApplication application) {
+        Long queuedAt = mQueuedAt.remove(id);
+        mMetrics.increment(SendMetrics.SENDS_SUCCEEDED);
+        if (queuedAt != null) {
+            mMetrics.record(SendMetrics.TOTAL_MILLIS, SystemClock.elapsedRealtime() - queuedAt);
+        }
+        dumpMetrics();
+
+        if (mListener != null) {
+            mListener.onSendSucceeded(id, application);
+        }
+        recordBatchOutcome(id, Outcome.SUCCEEDED);
+    }
+
+    /* Counted, but kept out of the timings since nothing was uploaded */
+    private void notifySkipped(String id, AdobeCreativeCloudApplication application) {
+        mQueuedAt.remove(id);
+        mMetrics.increment(SendMetrics.SENDS_DUPLICATE);
+        dumpMetrics();
+
+        if (mListener != null) {
+            mListener.onSendSkipped(id, application);
+        }
+        recordBatchOutcome(id, Outcome.SKIPPED);
+    }
+
+    private void notifyFailed(String id, AdobeCreativeCloudApplication application, AdobeSendToDesktopException e) {
+        Long queuedAt = mQueuedAt.remove(id);
+        mMetrics.increment(SendMetrics.SENDS_FAILED);
+        if (queuedAt != null) {
+            mMetrics.record(SendMetrics.FAILED_TOTAL_MILLIS, SystemClock.elapsedRealtime() - queuedAt);
+        }
+        dumpMetrics();
+        if (mListener != null) {
+            mListener.onSendFailed(id, application, e);
+        }
+        recordBatchOutcome(id, Outcome.FAILED);
+    }
+
+    private void recordBatchOutcome(String id, Outcome outcome) {
+        Batch batch = mBatchOfSend.remove(id);
+        if (batch == null) {
+            return;
+        }
+
+        switch (outcome) {
+            case SUCCEEDED:
+                batch.succeeded++;
+                break;
+            case FAILED:
+                batch.failed++;
+                break;
+            case SKIPPED:
+                batch.skipped++;
+                break;
+        }
+        if (--batch.remaining == 0) {
+            batch.callback.onBatchComplete(batch.succeeded, batch.failed, batch.skipped);
+        }
+    }
+
+    private void dumpMetrics() {
+        final File dumpFile = mMetricsDumpFile;
+        if (dumpFile == null) {
+            return;
+        }
+
+        mDiskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mMetrics.dump(dumpFile);
+                } catch (IOException e) {
+                    Log.e(TAG, "Error dumping send metrics: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    private void notifyPendingCountChanged() {
+        if (mListener != null) {
+            mListener.onPendingCountChanged(mPending.size());
+        }
+    }
+
+    private boolean isConnected() {
+        NetworkInfo networkInfo = mConnectivityManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+
+    private void startWaitingForNetwork() {
+        if (!mWaitingForNetwork) {
+            Log.d(TAG, "Offline, waiting for a connection");
+            mContext.registerReceiver(mConnectivityReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+            mWaitingForNetwork = true;
+        }
+    }
+
+    private void stopWaitingForNetwork() {
+        if (mWaitingForNetwork) {
+            mContext.unregisterReceiver(mConnectivityReceiver);
+            mWaitingForNetwork = false;
+        }
+    }
+
+    private static boolean isTransient(AdobeSendToDesktopException e) {
+        AdobeSendToDesktopErrorCode errorCode = e.getErrorCode();
+        if (errorCode == null) {
+            return true;
+        }
+        switch (errorCode) {
+            case ADOBE_SEND_TO_DESKTOP_ERROR_CODE_RESPONSE_TIME_OUT:
+            case ADOBE_SEND_TO_DESKTOP_ERROR_CODE_UNEXPECTED_RESPONSE:
+            case ADOBE_SEND_TO_DESKTOP_ERROR_CODE_PUSH_NOTIFICATION_ERROR:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.sendtodesktopapi;
+
+import android.content.ComponentCallbacks2;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.WorkerThread;
+import android.support.media.ExifInterface;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads downsampled, upright previews of picked images into {@link ImageView}s.
+ *
+ * Decoding happens on a background thread: the image's bounds are read first so it can be
+ * subsampled while decoding, then its EXIF orientation is applied. Previews are kept in an LRU
+ * bounded by the bytes they hold, keyed by Uri, so picking the same image again shows it straight
+ * away. A view only ever shows the last Uri it was asked to load.
+ */
+public class ThumbnailLoader {
+
+    private static final String TAG = ThumbnailLoader.class.getSimpleName();
+
+    private static ThumbnailLoader sSharedInstance;
+
+    private final ContentResolver mContentResolver;
+    private final LruCache<Uri, Bitmap> mCache;
+    private final ExecutorService mDecodeExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /* Only touched on the main thread */
+    private final Map<ImageView, Uri> mRequested = new WeakHashMap<>();
+
+    public static synchronized ThumbnailLoader getSharedInstance(Context context) {
+        if (sSharedInstance == null) {
+            /* Use a sixteenth of the heap for previews */
+            int cacheMaxBytes = (int) (Runtime.getRuntime().maxMemory() / 16);
+            sSharedInstance = new ThumbnailLoader(context.getApplicationContext().getContentResolver(), cacheMaxBytes);
+        }
+        return sSharedInstance;
+    }
+
+    ThumbnailLoader(ContentResolver contentResolver, int cacheMaxBytes) {
+        mContentResolver = contentResolver;
+        mCache = new LruCache<Uri, Bitmap>(cacheMaxBytes) {
+            @Override
+            protected int sizeOf(Uri key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Shows a preview of {@code uri} in {@code imageView}, no larger than {@code maxLongEdge}
+     * pixels along its long edge. Call it on the main thread.
+     */
+    public void load(final Uri uri, final ImageView imageView, final int maxLongEdge) {
+        mRequested.put(imageView, uri);
+
+        /* 1) Cache hit, show it straight away */
+        Bitmap cached = mCache.get(uri);
+        if (cached != null) {
+            imageView.setImageBitmap(cached);
+            return;
+        }
+
+        /* 2) Decode off the main thread, and only show it if the view still wants it */
+        imageView.setImageBitmap(null);
+        mDecodeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap preview = decode(uri, maxLongEdge);
+
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (preview == null) {
+                            return;
+                        }
+                        mCache.put(uri, preview);
+                        if (uri.equals(mRequested.get(imageView))) {
+                            imageView.setImageBitmap(preview);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Responds to {@link ComponentCallbacks2#onTrimMemory}.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            mCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mCache.trimToSize(mCache.maxSize() / 2);
+        }
+    }
+
+    @WorkerThread
+    private Bitmap decode(Uri uri, int maxLongEdge) {
+        try {
+            /* 1) Read the bounds without decoding any pixels */
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            decodeStream(uri, bounds);
+            if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+                Log.w(TAG, "Unable to read the bounds of " + uri);
+                return null;
+            }
+
+            /* 2) Subsample while decoding, keeping at least the long edge asked for */
+            BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+            decodeOptions.inSampleSize = 1;
+            int longEdge = Math.max(bounds.outWidth, bounds.outHeight);
+            while (longEdge / (decodeOptions.inSampleSize * 2) >= maxLongEdge) {
+                decodeOptions.inSampleSize *= 2;
+            }
+
+            Bitmap bitmap = decodeStream(uri, decodeOptions);
+            if (bitmap == null) {
+                Log.w(TAG, "Unable to decode " + uri);
+                return null;
+            }
+
+            /* 3) Scale the rest of the way and turn it upright */
+            float scale = Math.min(1f, (float) maxLongEdge / Math.max(bitmap.getWidth(), bitmap.getHeight()));
+            Bitmap preview = ImageTranscoder.transform(bitmap, scale, readOrientation(uri));
+            if (preview != bitmap) {
+                bitmap.recycle();
+            }
+            return preview;
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading preview: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private Bitmap decodeStream(Uri uri, BitmapFactory.Options options) throws IOException {
+        InputStream inputStream = null;
+        try {
+            inputStream = mContentResolver.openInputStream(uri);
+            if (inputStream == null) {
+                throw new IOException("Unable to open " + uri);
+            }
+            return BitmapFactory.decodeStream(inputStream, null, options);
+        } finally {
+            FileUtils.closeQuietly(inputStream);
+        }
+    }
+
+    private int readOrientation(Uri uri) {
+        InputStream inputStream = null;
+        try {
+            inputStream = mContentResolver.openInputStream(uri);
+            if (inputStream == null) {
+                return ExifInterface.ORIENTATION_NORMAL;
+            }
+            return new ExifInterface(inputStream).getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            return ExifInterface.ORIENTATION_NORMAL;
+        } finally {
+            FileUtils.closeQuietly(inputStream);
+        }
+    }
+}
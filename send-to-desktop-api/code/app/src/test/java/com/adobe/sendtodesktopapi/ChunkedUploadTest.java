@@ -0,0 +1,199 @@
+package com.adobe.sendtodesktopapi;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link ChunkedUpload} against a local HTTP server that can refuse a chunk.
+ */
+public class ChunkedUploadTest {
+
+    private static final int CHUNK_BYTES = 1024;
+
+    private final byte[] mBody = new byte[5 * CHUNK_BYTES + 100];
+    private final List<Long> mPutOffsets = Collections.synchronizedList(new ArrayList<Long>());
+
+    private HttpServer mServer;
+    private ExecutorService mServerExecutor;
+    private byte[] mReceived;
+    private volatile long mFailingOffset = -1;
+    private volatile long mAcknowledgeDelayMillis;
+    private volatile boolean mCompleted;
+    private File mSourceFile;
+
+    @Before
+    public void setUp() throws Exception {
+        new Random(1).nextBytes(mBody);
+        mReceived = new byte[mBody.length];
+
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/upload", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] data = readFully(exchange.getRequestBody());
+
+                int responseCode;
+                if ("PUT".equals(exchange.getRequestMethod())) {
+                    String contentRange = exchange.getRequestHeaders().getFirst("Content-Range");
+                    long first = Long.parseLong(contentRange.substring("bytes ".length(), contentRange.indexOf('-')));
+                    mPutOffsets.add(first);
+
+                    if (first == mFailingOffset) {
+                        responseCode = 503;
+                    } else {
+                        sleep(mAcknowledgeDelayMillis);
+                        synchronized (mReceived) {
+                            System.arraycopy(data, 0, mReceived, (int) first, data.length);
+                        }
+                        responseCode = 204;
+                    }
+                } else {
+                    synchronized (mReceived) {
+                        mCompleted = Arrays.equals(mBody, mReceived);
+                    }
+                    responseCode = mCompleted ? 201 : 409;
+                }
+                exchange.sendResponseHeaders(responseCode, -1);
+                exchange.close();
+            }
+        });
+        mServerExecutor = Executors.newCachedThreadPool();
+        mServer.setExecutor(mServerExecutor);
+        mServer.start();
+
+        mSourceFile = new File(System.getProperty("java.io.tmpdir"), "ChunkedUploadTest-" + System.nanoTime());
+        write(mSourceFile, mBody);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.stop(0);
+        mServerExecutor.shutdownNow();
+        newUpload(1).deleteState();
+        mSourceFile.delete();
+    }
+
+    @Test
+    public void resumesFromAcknowledgedChunks() throws Exception {
+        mFailingOffset = 3 * CHUNK_BYTES;
+        try {
+            newUpload(1).run(null);
+            fail("Expected the refused chunk to fail the first attempt");
+        } catch (IOException expected) {
+        }
+        /* Chunks put before the failure was noticed count along with the three before it */
+        int acknowledged = newUpload(1).getAcknowledgedChunks();
+        assertTrue(acknowledged >= 3);
+        assertEquals(mPutOffsets.size() - 1, acknowledged);
+        assertFalse(mCompleted);
+
+        mFailingOffset = -1;
+        mPutOffsets.clear();
+        newUpload(1).run(null);
+
+        assertTrue(mCompleted);
+        assertEquals(6 - acknowledged, mPutOffsets.size());
+        assertFalse(mPutOffsets.contains(0L));
+    }
+
+    @Test
+    public void keepsChunksAcknowledgedAfterAFailure() throws Exception {
+        mFailingOffset = 0;
+        mAcknowledgeDelayMillis = 300;
+        try {
+            newUpload(3).run(null);
+            fail("Expected the refused chunk to fail the attempt");
+        } catch (IOException expected) {
+        }
+
+        /* The chunks in flight beside the refused one land after it failed, and all still count */
+        assertTrue(mPutOffsets.size() >= 3);
+        assertEquals(mPutOffsets.size() - 1, newUpload(3).getAcknowledgedChunks());
+    }
+
+    @Test
+    public void uploadsChunksInParallel() throws Exception {
+        ChunkedUpload upload = newUpload(3);
+        upload.run(null);
+
+        assertTrue(mCompleted);
+        assertEquals(upload.getChunkCount(), mPutOffsets.size());
+        assertEquals(0, newUpload(3).getAcknowledgedChunks());
+    }
+
+    @Test
+    public void startsOverWhenTheFileChanged() throws Exception {
+        mFailingOffset = 3 * CHUNK_BYTES;
+        try {
+            newUpload(1).run(null);
+            fail("Expected the refused chunk to fail the first attempt");
+        } catch (IOException expected) {
+        }
+
+        new Random(2).nextBytes(mBody);
+        write(mSourceFile, mBody);
+        mSourceFile.setLastModified(mSourceFile.lastModified() + 1000);
+        assertEquals(0, newUpload(1).getAcknowledgedChunks());
+
+        mFailingOffset = -1;
+        mPutOffsets.clear();
+        newUpload(1).run(null);
+
+        assertTrue(mCompleted);
+        assertEquals(6, mPutOffsets.size());
+    }
+
+    private ChunkedUpload newUpload(int parallelism) throws Exception {
+        URL url = new URL("http://127.0.0.1:" + mServer.getAddress().getPort() + "/upload");
+        return new ChunkedUpload(url, null, mSourceFile, CHUNK_BYTES, parallelism);
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(data);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+        return outputStream.toByteArray();
+    }
+}
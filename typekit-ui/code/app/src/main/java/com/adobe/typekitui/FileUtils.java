@@ -0,0 +1,90 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.typekitui;
+
+import android.support.annotation.WorkerThread;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * File helpers for the classes that keep state on disk.
+ *
+ * Files are replaced atomically: the new contents go to a temp file next to the target, which is
+ * then renamed over it, so a crash part way through leaves the old file whole rather than a
+ * truncated one.
+ */
+final class FileUtils {
+
+    private FileUtils() {
+    }
+
+    /**
+     * Replaces the contents of {@code file} with {@code text}, as UTF-8.
+     */
+    @WorkerThread
+    static void writeAtomically(File file, String text) throws IOException {
+        File tempFile = tempFileFor(file);
+        FileOutputStream outputStream = new FileOutputStream(tempFile);
+        try {
+            outputStream.write(text.getBytes("UTF-8"));
+            outputStream.close();
+        } catch (IOException e) {
+            closeQuietly(outputStream);
+            tempFile.delete();
+            throw e;
+        }
+        replace(tempFile, file);
+    }
+
+    /**
+     * @return the temp file to write the new contents of {@code file} to, before {@link #replace}.
+     */
+    static File tempFileFor(File file) {
+        return new File(file.getPath() + ".tmp");
+    }
+
+    /**
+     * Renames {@code tempFile} over {@code file}. The temp file is deleted if that fails.
+     */
+    static void replace(File tempFile, File file) throws IOException {
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Unable to replace " + file);
+        }
+    }
+
+    static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.typekitui;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Search over the names in a synced font list, built once per list so each keystroke only looks
+ * things up.
+ *
+ * Names are lowercased, stripped of accents and split into words, and every word goes into one
+ * sorted table. A query matches a font when each of its words starts a word of the font's name,
+ * which a binary search over the table finds. Fonts whose name starts with the whole query come
+ * first. Failing that, a query of at least {@link #MIN_FUZZY_LENGTH} letters also matches names
+ * that have its letters in order, so "hlvtc" finds Helvetica. Within each rank fonts keep their
+ * list order.
+ */
+class FontIndex {
+
+    static final int MIN_FUZZY_LENGTH = 3;
+
+    private static final int RANK_NAME_PREFIX = 0;
+    private static final int RANK_WORD_PREFIX = 1;
+    private static final int RANK_FUZZY = 2;
+    private static final int RANK_COUNT = 3;
+    private static final int NO_MATCH = -1;
+
+    private static class Token {
+        final String word;
+        final int font;
+
+        Token(String word, int font) {
+            this.word = word;
+            this.font = font;
+        }
+    }
+
+    private final List<SyncedFont> mFonts;
+
+    /* Per font, in list order */
+    private final String[] mNames;
+    private final String[] mCompactNames;
+    private final String[][] mWords;
+
+    /* Every word of every name, sorted, and the font each came from */
+    private final String[] mTokenWords;
+    private final int[] mTokenFonts;
+
+    FontIndex(List<SyncedFont> fonts) {
+        mFonts = new ArrayList<>(fonts);
+
+        int count = mFonts.size();
+        mNames = new String[count];
+        mCompactNames = new String[count];
+        mWords = new String[count][];
+
+        List<Token> tokens = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String name = normalize(mFonts.get(i).displayName);
+            mNames[i] = name;
+            mCompactNames[i] = name.replace(" ", "");
+            mWords[i] = words(name);
+            for (String word : mWords[i]) {
+                tokens.add(new Token(word, i));
+            }
+        }
+
+        Collections.sort(tokens, new Comparator<Token>() {
+            @Override
+            public int compare(Token lhs, Token rhs) {
+                return lhs.word.compareTo(rhs.word);
+            }
+        });
+        mTokenWords = new String[tokens.size()];
+        mTokenFonts = new int[tokens.size()];
+        for (int i = 0; i < tokens.size(); i++) {
+            mTokenWords[i] = tokens.get(i).word;
+            mTokenFonts[i] = tokens.get(i).font;
+        }
+    }
+
+    /**
+     * @return the fonts matching {@code query}, best first, or every font for an empty query.
+     */
+    List<SyncedFont> search(String query) {
+        String normalizedQuery = normalize(query);
+        String[] terms = words(normalizedQuery);
+        if (terms.length == 0) {
+            return new ArrayList<>(mFonts);
+        }
+
+        int[] ranks = new int[mFonts.size()];
+        Arrays.fill(ranks, NO_MATCH);
+
+        /* 1) Fonts with a word starting with the first term, if their words cover the other terms too */
+        for (int i = lowerBound(terms[0]); i < mTokenWords.length && mTokenWords[i].startsWith(terms[0]); i++) {
+            int font = mTokenFonts[i];
+            if (ranks[font] == NO_MATCH && wordsStartWith(mWords[font], terms)) {
+                ranks[font] = mNames[font].startsWith(normalizedQuery) ? RANK_NAME_PREFIX : RANK_WORD_PREFIX;
+            }
+        }
+
+        /* 2) Names with the query's letters in order */
+        String compactQuery = normalizedQuery.replace(" ", "");
+        if (compactQuery.length() >= MIN_FUZZY_LENGTH) {
+            for (int font = 0; font < ranks.length; font++) {
+                if (ranks[font] == NO_MATCH && isSubsequence(compactQuery, mCompactNames[font])) {
+                    ranks[font] = RANK_FUZZY;
+                }
+            }
+        }
+
+        List<SyncedFont> results = new ArrayList<>();
+        for (int rank = 0; rank < RANK_COUNT; rank++) {
+            for (int font = 0; font < ranks.length; font++) {
+                if (ranks[font] == rank) {
+                    results.add(mFonts.get(font));
+                }
+            }
+        }
+        return results;
+    }
+
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = mTokenWords.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mTokenWords[middle].compareTo(prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static boolean wordsStartWith(String[] words, String[] terms) {
+        for (String term : terms) {
+            boolean found = false;
+            for (String word : words) {
+                if (word.startsWith(term)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSubsequence(String needle, String haystack) {
+        int matched = 0;
+        for (int i = 0; i < haystack.length() && matched < needle.length(); i++) {
+            if (haystack.charAt(i) == needle.charAt(matched)) {
+                matched++;
+            }
+        }
+        return matched == needle.length();
+    }
+
+    /* Lowercase, no accents, words separated by single spaces */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}+", "");
+        return decomposed.toLowerCase(Locale.US).replaceAll("[^\\p{L}\\p{N}]+", " ").trim();
+    }
+
+    private static String[] words(String normalized) {
+        return normalized.isEmpty() ? new String[0] : normalized.split(" ");
+    }
+}
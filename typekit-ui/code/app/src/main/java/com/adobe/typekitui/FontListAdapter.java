@@ -0,0 +1,229 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.typekitui;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.adobe.creativesdk.typekit.AdobeTypekitFont;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The synced font list for a {@link RecyclerView}, filtered by a search query, with each name
+ * shown in its own font.
+ *
+ * Item IDs are stable for as long as the adapter lives, one per font ID, so rows keep their views
+ * across syncs and searches. Without a query, a sync's changes are applied row by row.
+ */
+public class FontListAdapter extends RecyclerView.Adapter<FontListAdapter.ViewHolder> {
+
+    public interface Listener {
+        void onFontClicked(SyncedFont font);
+
+        /**
+         * @return the SDK font for a row's preview, or null if there isn't one yet.
+         */
+        AdobeTypekitFont fontFor(SyncedFont font);
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView nameTextView;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            nameTextView = (TextView) itemView.findViewById(R.id.fontItemTextView);
+        }
+    }
+
+    private final FontPreviewLoader mPreviewLoader;
+    private final Listener mListener;
+
+    private final Map<String, Long> mItemIds = new HashMap<>();
+
+    private FontIndex mIndex = new FontIndex(new ArrayList<SyncedFont>());
+    private String mQuery = "";
+    private List<SyncedFont> mShown = new ArrayList<>();
+    private String mSelectedFontId;
+
+    public FontListAdapter(FontPreviewLoader previewLoader, Listener listener) {
+        mPreviewLoader = previewLoader;
+        mListener = listener;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Replaces the list.
+     *
+     * @param index a search index over {@code fonts}, built off the main thread.
+     * @param diff what changed since the last list, or null to redraw everything.
+     */
+    void setFonts(List<SyncedFont> fonts, FontIndex index, FontListDiff diff) {
+        mIndex = index;
+
+        if (!mQuery.isEmpty() || diff == null || diff.reordered) {
+            redraw();
+            return;
+        }
+
+        for (SyncedFont font : diff.removed) {
+            int position = positionOf(font.fontId);
+            if (position < 0) {
+                redraw();
+                return;
+            }
+            mShown.remove(position);
+            notifyItemRemoved(position);
+        }
+        for (SyncedFont font : diff.changed) {
+            int position = positionOf(font.fontId);
+            if (position < 0) {
+                redraw();
+                return;
+            }
+            mShown.set(position, font);
+            notifyItemChanged(position);
+        }
+
+        /* In new list order, everything before each added font is in place by the time it goes in */
+        for (SyncedFont font : diff.added) {
+            int position = fonts.indexOf(font);
+            if (position < 0 || position > mShown.size()) {
+                redraw();
+                return;
+            }
+            mShown.add(position, font);
+            notifyItemInserted(position);
+        }
+    }
+
+    public void setQuery(String query) {
+        if (query.equals(mQuery)) {
+            return;
+        }
+        mQuery = query;
+        mShown = mIndex.search(query);
+        notifyDataSetChanged();
+    }
+
+    public void setSelectedFontId(String fontId) {
+        String previous = mSelectedFontId;
+        mSelectedFontId = fontId;
+
+        for (int position = 0; position < mShown.size(); position++) {
+            String shownFontId = mShown.get(position).fontId;
+            if (shownFontId.equals(previous) || shownFontId.equals(fontId)) {
+                notifyItemChanged(position);
+            }
+        }
+    }
+
+    public String getSelectedFontId() {
+        return mSelectedFontId;
+    }
+
+    /**
+     * @return the font shown at {@code position}.
+     */
+    public SyncedFont getFont(int position) {
+        return mShown.get(position);
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View itemView = LayoutInflater.from(parent.getContext()).inflate(R.layout.font_list_item, parent, false);
+        final ViewHolder holder = new ViewHolder(itemView);
+
+        itemView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                int position = holder.getAdapterPosition();
+                if (position != RecyclerView.NO_POSITION) {
+                    mListener.onFontClicked(mShown.get(position));
+                }
+            }
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        SyncedFont font = mShown.get(position);
+        holder.nameTextView.setText(font.displayName);
+        holder.itemView.setActivated(font.fontId.equals(mSelectedFontId));
+
+        AdobeTypekitFont previewFont = mListener.fontFor(font);
+        if (previewFont != null) {
+            mPreviewLoader.load(previewFont, holder.nameTextView);
+        } else {
+            mPreviewLoader.showLoaded(font.fontId, holder.nameTextView);
+        }
+    }
+
+    @Override
+    public void onViewRecycled(ViewHolder holder) {
+        mPreviewLoader.cancel(holder.nameTextView);
+    }
+
+    @Override
+    public int getItemCount() {
+        return mShown.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        String fontId = mShown.get(position).fontId;
+        Long itemId = mItemIds.get(fontId);
+        if (itemId == null) {
+            itemId = (long) mItemIds.size();
+            mItemIds.put(fontId, itemId);
+        }
+        return itemId;
+    }
+
+    /**
+     * Shows the whole list again, for when a diff can't be applied row by row, such as when the
+     * rows shown have drifted from the list the diff was taken against.
+     */
+    private void redraw() {
+        mShown = mIndex.search(mQuery);
+        notifyDataSetChanged();
+    }
+
+    private int positionOf(String fontId) {
+        for (int position = 0; position < mShown.size(); position++) {
+            if (mShown.get(position).fontId.equals(fontId)) {
+                return position;
+            }
+        }
+        return -1;
+    }
+}
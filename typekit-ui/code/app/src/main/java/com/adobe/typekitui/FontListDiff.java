@@ -0,0 +1,94 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.typekitui;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The changes between two versions of the synced font list, matched up by font ID.
+ */
+public class FontListDiff {
+
+    /* Fonts that are gone, as they were in the old list */
+    public final List<SyncedFont> removed = new ArrayList<>();
+    /* Fonts that are new, in the order of the new list */
+    public final List<SyncedFont> added = new ArrayList<>();
+    /* Fonts whose details changed, as they are in the new list */
+    public final List<SyncedFont> changed = new ArrayList<>();
+    /* Whether fonts in both lists are in a different order, which a delta can't express */
+    public boolean reordered;
+
+    public static FontListDiff compute(List<SyncedFont> oldFonts, List<SyncedFont> newFonts) {
+        FontListDiff diff = new FontListDiff();
+
+        Map<String, SyncedFont> oldById = new HashMap<>();
+        for (SyncedFont font : oldFonts) {
+            oldById.put(font.fontId, font);
+        }
+        Set<String> newIds = new HashSet<>();
+        for (SyncedFont font : newFonts) {
+            newIds.add(font.fontId);
+        }
+
+        List<String> keptInOldOrder = new ArrayList<>();
+        for (SyncedFont font : oldFonts) {
+            if (newIds.contains(font.fontId)) {
+                keptInOldOrder.add(font.fontId);
+            } else {
+                diff.removed.add(font);
+            }
+        }
+
+        List<String> keptInNewOrder = new ArrayList<>();
+        for (SyncedFont font : newFonts) {
+            SyncedFont oldFont = oldById.get(font.fontId);
+            if (oldFont == null) {
+                diff.added.add(font);
+            } else {
+                keptInNewOrder.add(font.fontId);
+                if (!oldFont.equals(font)) {
+                    diff.changed.add(font);
+                }
+            }
+        }
+
+        diff.reordered = !keptInOldOrder.equals(keptInNewOrder);
+        return diff;
+    }
+
+    public boolean isEmpty() {
+        return removed.isEmpty() && added.isEmpty() && changed.isEmpty() && !reordered;
+    }
+
+    @Override
+    public String toString() {
+        return "+" + added.size() + " -" + removed.size() + " ~" + changed.size() + (reordered ? " reordered" : "");
+    }
+}
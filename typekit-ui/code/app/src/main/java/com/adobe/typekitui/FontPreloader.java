@@ -0,0 +1,181 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.typekitui;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Typeface;
+import android.util.Log;
+
+import com.adobe.creativesdk.typekit.AdobeTypekitFont;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads typefaces into the {@link TypefaceCache} before they are picked: the fonts either side of
+ * the current selection, and the fonts the user picks most.
+ *
+ * At most {@link #MAX_CONCURRENT_PRELOADS} loads run at once, and each round brings in at most
+ * {@link #MAX_PRELOADS_PER_ROUND} typefaces, so preloading never pushes much of what is in use out
+ * of the cache's memory tier. A new round replaces whatever the last one hadn't started yet. How
+ * often each font is picked is kept in {@link SharedPreferences}. Call everything on the main
+ * thread.
+ */
+public class FontPreloader {
+
+    private static final String TAG = FontPreloader.class.getSimpleName();
+
+    private static final String PREFS_NAME = "font_usage";
+
+    /* Font IDs are the keys for the use counts, this can't be one */
+    private static final String KEY_LAST_USED = "last_used:";
+
+    static final int MAX_CONCURRENT_PRELOADS = 2;
+    static final int MAX_PRELOADS_PER_ROUND = 8;
+    private static final int NEIGHBOUR_COUNT = 2;
+    private static final int MOST_USED_COUNT = 3;
+
+    private final TypefaceCache mTypefaceCache;
+    private final SharedPreferences mUsage;
+
+    private final LinkedList<AdobeTypekitFont> mQueue = new LinkedList<>();
+    private int mRunning;
+
+    private final AdobeTypekitFont.ITypekitCallback<Typeface, String> mPreloadCallback =
+            new AdobeTypekitFont.ITypekitCallback<Typeface, String>() {
+        @Override
+        public void onSuccess(AdobeTypekitFont adobeTypekitFont, Typeface typeface) {
+            mRunning--;
+            startNext();
+        }
+
+        @Override
+        public void onError(AdobeTypekitFont adobeTypekitFont, String s) {
+            Log.w(TAG, "Unable to preload " + adobeTypekitFont.displayName() + ": " + s);
+            mRunning--;
+            startNext();
+        }
+    };
+
+    public FontPreloader(Context context, TypefaceCache typefaceCache) {
+        mTypefaceCache = typefaceCache;
+        mUsage = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Counts a pick of {@code font}, for ranking the most used fonts.
+     */
+    public void recordUse(AdobeTypekitFont font) {
+        String fontId = font.getFontID();
+        mUsage.edit()
+                .putInt(fontId, mUsage.getInt(fontId, 0) + 1)
+                .putString(KEY_LAST_USED, fontId)
+                .apply();
+    }
+
+    /**
+     * @return the ID of the font picked last, in this session or an earlier one, or null.
+     */
+    public String getLastUsed() {
+        return mUsage.getString(KEY_LAST_USED, null);
+    }
+
+    /**
+     * Starts a round of preloads for the fonts around {@code position} in {@code fonts} and the
+     * most used ones among them.
+     */
+    public void preloadAround(List<AdobeTypekitFont> fonts, int position) {
+        /* 1) Neighbours first, nearest first, then the favourites */
+        Map<String, AdobeTypekitFont> candidates = new LinkedHashMap<>();
+        for (int distance = 1; distance <= NEIGHBOUR_COUNT; distance++) {
+            addCandidate(candidates, fonts, position + distance);
+            addCandidate(candidates, fonts, position - distance);
+        }
+        for (AdobeTypekitFont font : mostUsed(fonts)) {
+            candidates.put(font.getFontID(), font);
+        }
+
+        /* 2) Replace what the last round hadn't started with what isn't cached yet */
+        mQueue.clear();
+        for (AdobeTypekitFont font : candidates.values()) {
+            if (mQueue.size() >= MAX_PRELOADS_PER_ROUND) {
+                break;
+            }
+            if (mTypefaceCache.getFromMemory(font.getFontID()) == null) {
+                mQueue.add(font);
+            }
+        }
+
+        startNext();
+    }
+
+    public void cancel() {
+        mQueue.clear();
+    }
+
+    private void startNext() {
+        while (mRunning < MAX_CONCURRENT_PRELOADS && !mQueue.isEmpty()) {
+            AdobeTypekitFont font = mQueue.removeFirst();
+            if (mTypefaceCache.getFromMemory(font.getFontID()) != null) {
+                continue;
+            }
+            mRunning++;
+            mTypefaceCache.getTypeface(font, mPreloadCallback);
+        }
+    }
+
+    private List<AdobeTypekitFont> mostUsed(List<AdobeTypekitFont> fonts) {
+        List<AdobeTypekitFont> used = new ArrayList<>();
+        final Map<String, Integer> useCounts = new LinkedHashMap<>();
+        for (AdobeTypekitFont font : fonts) {
+            int useCount = mUsage.getInt(font.getFontID(), 0);
+            if (useCount > 0) {
+                used.add(font);
+                useCounts.put(font.getFontID(), useCount);
+            }
+        }
+
+        Collections.sort(used, new Comparator<AdobeTypekitFont>() {
+            @Override
+            public int compare(AdobeTypekitFont lhs, AdobeTypekitFont rhs) {
+                return useCounts.get(rhs.getFontID()) - useCounts.get(lhs.getFontID());
+            }
+        });
+        return used.subList(0, Math.min(MOST_USED_COUNT, used.size()));
+    }
+
+    private static void addCandidate(Map<String, AdobeTypekitFont> candidates, List<AdobeTypekitFont> fonts, int position) {
+        if (position >= 0 && position < fonts.size()) {
+            AdobeTypekitFont font = fonts.get(position);
+            candidates.put(font.getFontID(), font);
+        }
+    }
+}
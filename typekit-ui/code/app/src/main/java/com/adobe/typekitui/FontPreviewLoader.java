@@ -0,0 +1,200 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.typekitui;
+
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.TextView;
+
+import com.adobe.creativesdk.typekit.AdobeTypekitFont;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Renders font names in their own fonts for the rows of a font list.
+ *
+ * A preview only needs the glyphs of the name, so it is a subset of just those, kept in an LRU
+ * separate from the {@link SubsetTypefaceCache} so scrolling doesn't evict the subsets in use. A
+ * whole typeface already in the {@link TypefaceCache} is used instead. At most
+ * {@link #MAX_CONCURRENT_LOADS} previews load at once, the most recently asked for first; only
+ * the last {@link #MAX_QUEUED_LOADS} requests are kept, and a request is dropped once no row
+ * wants it. A row only ever shows the last font it was asked to show. Call everything on the main
+ * thread.
+ */
+public class FontPreviewLoader {
+
+    private static final String TAG = FontPreviewLoader.class.getSimpleName();
+
+    static final int MAX_CONCURRENT_LOADS = 3;
+    static final int MAX_QUEUED_LOADS = 24;
+    private static final int MAX_PREVIEWS = 64;
+
+    private final TypefaceCache mTypefaceCache;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final LruCache<String, Typeface> mPreviews = new LruCache<>(MAX_PREVIEWS);
+
+    /* The font each row was last asked to show */
+    private final Map<TextView, String> mRequested = new WeakHashMap<>();
+
+    /* Waiting to start, oldest first */
+    private final LinkedHashMap<String, AdobeTypekitFont> mQueue = new LinkedHashMap<>();
+    private final Set<String> mLoading = new HashSet<>();
+    private int mGeneration;
+
+    public FontPreviewLoader(TypefaceCache typefaceCache) {
+        mTypefaceCache = typefaceCache;
+    }
+
+    /**
+     * Shows {@code textView} in {@code font}, in the default typeface until the preview is loaded.
+     */
+    public void load(AdobeTypekitFont font, TextView textView) {
+        String fontId = font.getFontID();
+        mRequested.put(textView, fontId);
+
+        /* 1) Already loaded, show it straight away */
+        Typeface typeface = getLoaded(fontId);
+        if (typeface != null) {
+            textView.setTypeface(typeface);
+            return;
+        }
+        textView.setTypeface(Typeface.DEFAULT);
+
+        /* 2) Queue it as the newest request, dropping the oldest past the limit */
+        if (!mLoading.contains(fontId)) {
+            mQueue.remove(fontId);
+            mQueue.put(fontId, font);
+            if (mQueue.size() > MAX_QUEUED_LOADS) {
+                Iterator<String> iterator = mQueue.keySet().iterator();
+                iterator.next();
+                iterator.remove();
+            }
+        }
+
+        startNext();
+    }
+
+    /**
+     * Forgets what {@code textView} was asked to show, so a preview nobody else wants isn't loaded.
+     */
+    public void cancel(TextView textView) {
+        String fontId = mRequested.remove(textView);
+        if (fontId != null && !mRequested.containsValue(fontId)) {
+            mQueue.remove(fontId);
+        }
+    }
+
+    /**
+     * Shows {@code textView} in a font already in memory, such as one restored from the store
+     * before the SDK has listed it, or in the default typeface. Nothing is loaded.
+     */
+    public void showLoaded(String fontId, TextView textView) {
+        cancel(textView);
+        Typeface typeface = getLoaded(fontId);
+        textView.setTypeface(typeface != null ? typeface : Typeface.DEFAULT);
+    }
+
+    /**
+     * Throws away every preview. Loads already running finish but their previews aren't kept;
+     * rows still waiting on them are queued again.
+     */
+    public void invalidate() {
+        mGeneration++;
+        mPreviews.evictAll();
+    }
+
+    private Typeface getLoaded(String fontId) {
+        Typeface typeface = mTypefaceCache.getFromMemory(fontId);
+        return typeface != null ? typeface : mPreviews.get(fontId);
+    }
+
+    private void startNext() {
+        while (mLoading.size() < MAX_CONCURRENT_LOADS && !mQueue.isEmpty()) {
+            AdobeTypekitFont font = null;
+            for (AdobeTypekitFont queued : mQueue.values()) {
+                font = queued;
+            }
+            mQueue.remove(font.getFontID());
+
+            if (mRequested.containsValue(font.getFontID())) {
+                loadPreview(font);
+            }
+        }
+    }
+
+    private void loadPreview(final AdobeTypekitFont font) {
+        final String fontId = font.getFontID();
+        final int generation = mGeneration;
+        mLoading.add(fontId);
+
+        font.getSubsetTypeface(font.displayName(), new AdobeTypekitFont.ITypekitCallback<Typeface, String>() {
+            @Override
+            public void onSuccess(AdobeTypekitFont adobeTypekitFont, final Typeface typeface) {
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mLoading.remove(fontId);
+                        if (generation != mGeneration) {
+                            /* Invalidated while loading, so load it again for whoever still wants it */
+                            if (mRequested.containsValue(fontId)) {
+                                mQueue.put(fontId, font);
+                            }
+                            startNext();
+                            return;
+                        }
+
+                        mPreviews.put(fontId, typeface);
+                        for (Map.Entry<TextView, String> requested : mRequested.entrySet()) {
+                            if (fontId.equals(requested.getValue())) {
+                                requested.getKey().setTypeface(typeface);
+                            }
+                        }
+                        startNext();
+                    }
+                });
+            }
+
+            @Override
+            public void onError(AdobeTypekitFont adobeTypekitFont, final String s) {
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Log.w(TAG, "Unable to load a preview of " + fontId + ": " + s);
+                        mLoading.remove(fontId);
+                        startNext();
+                    }
+                });
+            }
+        });
+    }
+}
@@ -0,0 +1,323 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.typekitui;
+
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Font files kept on the device across sessions, so fonts used before can be applied without a
+ * connection.
+ *
+ * The files sit in one directory with a small manifest: a version line, then one tab-separated
+ * line per font with its size, when it was last used and when the synced list last confirmed it.
+ * A manifest in another version is discarded along with its fonts. A font the synced list hasn't
+ * confirmed within {@link #MAX_UNVALIDATED_MILLIS} is no longer served, so a font removed from
+ * the user's list while offline doesn't stay usable for good. Once the files outgrow the byte
+ * budget, the least recently used go first. Call everything off the main thread.
+ */
+class FontStore {
+
+    private static final String TAG = FontStore.class.getSimpleName();
+
+    private static final String MANIFEST_NAME = "manifest";
+    private static final String VERSION = "v1";
+
+    static final long MAX_UNVALIDATED_MILLIS = 30L * 24 * 60 * 60 * 1000;
+
+    private static class Entry {
+        final String fontId;
+        long bytes;
+        long lastUsedMillis;
+        long validatedMillis;
+
+        Entry(String fontId) {
+            this.fontId = fontId;
+        }
+    }
+
+    private final File mDir;
+    private final long mMaxBytes;
+
+    /* Read from the manifest on first use, least recently used first */
+    private Map<String, Entry> mEntries;
+
+    FontStore(File dir, long maxBytes) {
+        mDir = dir;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * @return the stored file for a font, or null if it isn't stored or is no longer served.
+     */
+    @WorkerThread
+    synchronized File get(String fontId) {
+        Entry entry = entries().get(fontId);
+        if (entry == null) {
+            return null;
+        }
+
+        File file = fileFor(fontId);
+        long now = System.currentTimeMillis();
+        if (!file.isFile() || now - entry.validatedMillis > MAX_UNVALIDATED_MILLIS) {
+            remove(fontId);
+            return null;
+        }
+
+        entry.lastUsedMillis = now;
+        touch(entry);
+        writeManifest();
+        return file;
+    }
+
+    /**
+     * Stores a copy of {@code source} as the file for a font.
+     *
+     * @return the stored file, or null if it couldn't be stored.
+     */
+    @WorkerThread
+    synchronized File put(String fontId, File source) {
+        if (!mDir.isDirectory() && !mDir.mkdirs()) {
+            Log.e(TAG, "Unable to create " + mDir);
+            return null;
+        }
+
+        File file = fileFor(fontId);
+        if (!copy(source, file)) {
+            return null;
+        }
+
+        Entry entry = new Entry(fontId);
+        entry.bytes = file.length();
+        entry.lastUsedMillis = System.currentTimeMillis();
+        entry.validatedMillis = entry.lastUsedMillis;
+        touch(entry);
+
+        trim();
+        writeManifest();
+        return file;
+    }
+
+    @WorkerThread
+    synchronized void remove(String fontId) {
+        entries().remove(fontId);
+        fileFor(fontId).delete();
+        writeManifest();
+    }
+
+    /**
+     * @return the IDs of up to {@code max} stored fonts, most recently used first.
+     */
+    @WorkerThread
+    synchronized List<String> getRecentlyUsed(int max) {
+        List<Entry> entries = new ArrayList<>(entries().values());
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry lhs, Entry rhs) {
+                return lhs.lastUsedMillis > rhs.lastUsedMillis ? -1 : (lhs.lastUsedMillis == rhs.lastUsedMillis ? 0 : 1);
+            }
+        });
+
+        List<String> fontIds = new ArrayList<>();
+        for (int i = 0; i < entries.size() && fontIds.size() < max; i++) {
+            fontIds.add(entries.get(i).fontId);
+        }
+        return fontIds;
+    }
+
+    /**
+     * Brings the store in line with the user's synced list: fonts still on it are confirmed, the
+     * rest are removed.
+     *
+     * @return the IDs of the fonts removed.
+     */
+    @WorkerThread
+    synchronized List<String> revalidate(Collection<String> syncedFontIds) {
+        List<String> removed = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        Iterator<Entry> iterator = entries().values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (syncedFontIds.contains(entry.fontId)) {
+                entry.validatedMillis = now;
+            } else {
+                iterator.remove();
+                fileFor(entry.fontId).delete();
+                removed.add(entry.fontId);
+            }
+        }
+
+        writeManifest();
+        return removed;
+    }
+
+    /**
+     * Removes every stored font, such as when the SDK reports that its font licenses have expired.
+     */
+    @WorkerThread
+    synchronized void clear() {
+        mEntries = new LinkedHashMap<>();
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private Map<String, Entry> entries() {
+        if (mEntries == null) {
+            mEntries = readManifest();
+        }
+        return mEntries;
+    }
+
+    /* Move an entry to the most recently used end */
+    private void touch(Entry entry) {
+        entries().remove(entry.fontId);
+        entries().put(entry.fontId, entry);
+    }
+
+    private void trim() {
+        long totalBytes = 0;
+        for (Entry entry : entries().values()) {
+            totalBytes += entry.bytes;
+        }
+
+        Iterator<Entry> iterator = entries().values().iterator();
+        while (totalBytes > mMaxBytes && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            iterator.remove();
+            fileFor(entry.fontId).delete();
+            totalBytes -= entry.bytes;
+        }
+    }
+
+    private Map<String, Entry> readManifest() {
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        File manifest = new File(mDir, MANIFEST_NAME);
+        if (!manifest.isFile()) {
+            return entries;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), "UTF-8"));
+            if (!VERSION.equals(reader.readLine())) {
+                Log.w(TAG, "Discarding fonts stored in an unknown format");
+                FileUtils.closeQuietly(reader);
+                reader = null;
+                clear();
+                return mEntries;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length == 4) {
+                    Entry entry = new Entry(fields[0]);
+                    entry.bytes = Long.parseLong(fields[1]);
+                    entry.lastUsedMillis = Long.parseLong(fields[2]);
+                    entry.validatedMillis = Long.parseLong(fields[3]);
+                    entries.put(entry.fontId, entry);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            Log.e(TAG, "Error reading font manifest: " + e.getMessage());
+        } finally {
+            FileUtils.closeQuietly(reader);
+        }
+        return entries;
+    }
+
+    private void writeManifest() {
+        if (!mDir.isDirectory()) {
+            return; // Nothing stored yet
+        }
+
+        StringBuilder builder = new StringBuilder(VERSION).append('\n');
+        for (Entry entry : entries().values()) {
+            builder.append(entry.fontId).append('\t')
+                    .append(entry.bytes).append('\t')
+                    .append(entry.lastUsedMillis).append('\t')
+                    .append(entry.validatedMillis).append('\n');
+        }
+
+        try {
+            FileUtils.writeAtomically(new File(mDir, MANIFEST_NAME), builder.toString());
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing font manifest: " + e.getMessage());
+        }
+    }
+
+    private boolean copy(File source, File destination) {
+        File tempFile = FileUtils.tempFileFor(destination);
+        InputStream inputStream = null;
+        OutputStream outputStream = null;
+        try {
+            inputStream = new FileInputStream(source);
+            outputStream = new FileOutputStream(tempFile);
+
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+            outputStream.close();
+            FileUtils.replace(tempFile, destination);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Error storing font file: " + e.getMessage());
+            tempFile.delete();
+            return false;
+        } finally {
+            FileUtils.closeQuietly(inputStream);
+            FileUtils.closeQuietly(outputStream);
+        }
+    }
+
+    /* Font IDs are used as file names, so keep them away from the manifest's */
+    private File fileFor(String fontId) {
+        return new File(mDir, "font-" + fontId);
+    }
+}
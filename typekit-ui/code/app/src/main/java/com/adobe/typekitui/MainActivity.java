@@ -28,19 +28,20 @@ import android.content.Intent;
 import android.graphics.Typeface;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.Toolbar;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.inputmethod.InputMethodManager;
-import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.ProgressBar;
-import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -55,26 +56,44 @@ import com.adobe.creativesdk.typekit.TypekitNotification;
 import com.adobe.creativesdk.typekit.UserNotAuthenticatedException;
 
 import java.util.ArrayList;
-import java.util.Observable;
-import java.util.Observer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
-/* Implement the `Observer` interface  */
-public class MainActivity extends AppCompatActivity implements Observer {
+/* Implement the `TypekitEventDispatcher.Listener` interface  */
+public class MainActivity extends AppCompatActivity implements TypekitEventDispatcher.Listener {
 
     public static final String TAG = MainActivity.class.getSimpleName();
     static final int REQ_CODE_CSDK_USER_AUTH = 1001;
 
+    /* Stored fonts loaded into memory at startup, for the list's previews */
+    static final int MAX_RESTORED_FONTS = 8;
+
     private AdobeUXAuthManager mUXAuthManager = AdobeUXAuthManager.getSharedAuthManager();
     private AdobeAuthSessionHelper mAuthSessionHelper;
 
     /* Store an instance of `AdobeTypekitManager` as a member variable */
     private AdobeTypekitManager mTypekitManager = AdobeTypekitManager.getInstance();
+    private TypekitEventDispatcher mTypekitEventDispatcher = TypekitEventDispatcher.getSharedInstance();
+
+    private TypefaceCache mTypefaceCache;
+    private SubsetTypefaceCache mSubsetTypefaceCache = SubsetTypefaceCache.getSharedInstance();
+    private SyncedFontStore mSyncedFontStore;
+    private FontPreloader mFontPreloader;
+    private FontPreviewLoader mFontPreviewLoader;
+
+    /* The synced font list as last shown, and the SDK fonts behind it */
+    private List<SyncedFont> mSyncedFonts = new ArrayList<>();
+    private Map<String, AdobeTypekitFont> mFontsById = new HashMap<>();
+    private FontListAdapter mFontAdapter;
 
     private Button mSyncTypekitFontsButton;
     private TextView mTargetTextView;
     private TextView mFontNameTextView;
-    private Spinner mFontSpinner;
+    private EditText mFontSearchEditText;
+    private RecyclerView mFontRecyclerView;
+    private LinearLayoutManager mFontLayoutManager;
     private TextView mTargetTextView2;
     private EditText mFontEditText;
     private ProgressBar mSubsetFontProgressBar;
@@ -87,24 +106,125 @@ public class MainActivity extends AppCompatActivity implements Observer {
         Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
 
+        mTypefaceCache = TypefaceCache.getSharedInstance(this);
+        mSyncedFontStore = SyncedFontStore.getSharedInstance(this);
+        mFontPreloader = new FontPreloader(this, mTypefaceCache);
+        mFontPreviewLoader = new FontPreviewLoader(mTypefaceCache);
+        mTypekitEventDispatcher.addListener(this);
+
         mAuthSessionHelper = new AdobeAuthSessionHelper(mStatusCallback);
         mAuthSessionHelper.onCreate(savedInstanceState);
 
         mSyncTypekitFontsButton = (Button) findViewById(R.id.syncTypekitFontsButton);
         mTargetTextView = (TextView) findViewById(R.id.targetTextView);
         mFontNameTextView = (TextView) findViewById(R.id.fontNameTextView);
-        mFontSpinner = (Spinner) findViewById(R.id.fontSpinner);
+        mFontSearchEditText = (EditText) findViewById(R.id.fontSearchEditText);
+        mFontRecyclerView = (RecyclerView) findViewById(R.id.fontRecyclerView);
         mTargetTextView2 = (TextView) findViewById(R.id.targetTextView2);
         mFontEditText = (EditText) findViewById(R.id.fontEditText);
         mSubsetFontProgressBar = (ProgressBar) findViewById(R.id.subsetFontProgressBar);
         mEntireFontProgressBar = (ProgressBar) findViewById(R.id.entireFontProgressBar);
 
+        /* The adapter is kept for good, syncs only apply their changes to it */
+        mFontAdapter = new FontListAdapter(mFontPreviewLoader, new FontListAdapter.Listener() {
+            @Override
+            public void onFontClicked(SyncedFont syncedFont) {
+                /* Unlike a row, a click is worth asking the SDK about fonts from last session */
+                AdobeTypekitFont font = findFont(syncedFont);
+                if (font != null) {
+                    mFontAdapter.setSelectedFontId(syncedFont.fontId);
+                    applyEntireFont(font);
+                    mFontPreloader.recordUse(font);
+                    preloadAroundSelection();
+                } else {
+                    /* Not listed by the SDK yet, but it may be stored from an earlier session */
+                    mTypefaceCache.getStoredTypeface(syncedFont.fontId, new TypefaceCache.StoredCallback() {
+                        @Override
+                        public void onLoaded(String fontId, Typeface typeface) {
+                            if (typeface != null) {
+                                mFontAdapter.setSelectedFontId(fontId);
+                                showEntireFont(typeface);
+                            } else {
+                                Log.w(TAG, "Font not available until Typekit fonts are synced");
+                            }
+                        }
+                    });
+                }
+            }
+
+            @Override
+            public AdobeTypekitFont fontFor(SyncedFont syncedFont) {
+                /* Only fonts the SDK has listed this session, binding a row shouldn't go looking */
+                return mFontsById.get(syncedFont.fontId);
+            }
+        });
+        mFontLayoutManager = new LinearLayoutManager(this);
+        mFontRecyclerView.setLayoutManager(mFontLayoutManager);
+        mFontRecyclerView.setHasFixedSize(true);
+        mFontRecyclerView.setAdapter(mFontAdapter);
+
+        /* Once scrolling settles, get the fonts on screen ready before one is picked */
+        mFontRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    preloadAroundVisible();
+                }
+            }
+        });
+
+        mFontSearchEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                mFontAdapter.setQuery(s.toString());
+            }
+        });
+
+        /* Show the list from last time until the next sync */
+        mSyncedFontStore.load(new SyncedFontStore.LoadCallback() {
+            @Override
+            public void onLoaded(List<SyncedFont> fonts, FontIndex index) {
+                if (mSyncedFonts.isEmpty()) {
+                    applyFontList(fonts, index);
+                }
+            }
+        });
+
+        /* The font picked last time comes from the store first, connected or not, then the recently used ones for the previews */
+        String lastUsedFontId = mFontPreloader.getLastUsed();
+        if (lastUsedFontId != null) {
+            mTypefaceCache.getStoredTypeface(lastUsedFontId, new TypefaceCache.StoredCallback() {
+                @Override
+                public void onLoaded(String fontId, Typeface typeface) {
+                    if (typeface != null && mFontAdapter.getSelectedFontId() == null) {
+                        mFontAdapter.setSelectedFontId(fontId);
+                        showEntireFont(typeface);
+                    }
+                }
+            });
+        }
+        mTypefaceCache.restore(MAX_RESTORED_FONTS, new TypefaceCache.RestoreCallback() {
+            @Override
+            public void onRestored(List<String> fontIds) {
+                if (!fontIds.isEmpty()) {
+                    mFontAdapter.notifyDataSetChanged();
+                }
+            }
+        });
+
         View.OnClickListener applyRandomFontListener = new View.OnClickListener() {
             @Override
             public void onClick(View v) {
                 mSyncTypekitFontsButton.setEnabled(false);
                 mSubsetFontProgressBar.setVisibility(View.VISIBLE);
-                mEntireFontProgressBar.setVisibility(View.VISIBLE);
                 mTypekitManager.syncFonts();
             }
         };
@@ -159,8 +279,11 @@ public class MainActivity extends AppCompatActivity implements Observer {
             /* Initialize the `AdobeTypekitManager` instance */
             mTypekitManager.init(this);
 
-            /* Add the Activity as an Observer to watch for Typekit notifications */
-            mTypekitManager.addObserver(this);
+            /* Typekit notifications reach the Activity through the dispatcher, which does the list work off the main thread */
+            mTypekitEventDispatcher.attach(mTypekitManager);
+
+            /* Revalidate the stored fonts against the synced list in the background, they are usable meanwhile */
+            mTypekitManager.syncFonts();
         } catch (UserNotAuthenticatedException e) {
             e.printStackTrace();
 
@@ -190,12 +313,14 @@ public class MainActivity extends AppCompatActivity implements Observer {
     protected void onStop() {
         super.onStop();
         mAuthSessionHelper.onStop();
+        mFontPreloader.cancel();
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
         mAuthSessionHelper.onDestroy();
+        mTypekitEventDispatcher.removeListener(this);
     }
 
     @Override
@@ -213,11 +338,9 @@ public class MainActivity extends AppCompatActivity implements Observer {
         }
     }
 
-    /* Implement the `Observer` interface method */
+    /* Implement the `TypekitEventDispatcher.Listener` interface method, called on the main thread */
     @Override
-    public void update(Observable observable, Object data) {
-
-        TypekitNotification notification = (TypekitNotification) data;
+    public void onTypekitEvent(TypekitNotification notification, TypekitEventDispatcher.FontList fontList) {
 
         switch (notification.getTypekitEvent()) {
 
@@ -227,28 +350,23 @@ public class MainActivity extends AppCompatActivity implements Observer {
 
             case TypekitNotification.Event.FONT_SELECTION_REFRESH:
                 Toast.makeText(MainActivity.this, "Typekit fonts synced", Toast.LENGTH_SHORT).show();
-                ArrayList<AdobeTypekitFont> syncList = AdobeTypekitFont.getFonts();
-
-                Random random = new Random();
-                applySubsetFont(syncList.get(random.nextInt(syncList.size())));
-
-                /* Set Spinner Adapter to display Typekit Synced Fonts list */
-                setSpinnerAdapter(syncList);
-
-                if (mFontSpinner != null) {
-
-                    mFontSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
-                        @Override
-                        public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
-                            applyEntireFont(syncList.get(position));
-                        }
+                List<AdobeTypekitFont> syncList = fontList.fonts;
 
-                        @Override
-                        public void onNothingSelected(AdapterView<?> parent) {
-                        }
-                    });
+                if (!syncList.isEmpty()) {
+                    Random random = new Random();
+                    applySubsetFont(syncList.get(random.nextInt(syncList.size())));
+                }
 
+                /* Update the font list with what changed in the Typekit Synced Fonts list */
+                mFontsById = new HashMap<>(fontList.fontsById);
+                mTypefaceCache.revalidate(fontList.fontsById.keySet());
+                if (applyFontList(fontList.syncedFonts, fontList.index)) {
+                    mSyncedFontStore.save(fontList.syncedFonts);
+                } else {
+                    /* Rows shown from last time's list can have previews now */
+                    mFontAdapter.notifyDataSetChanged();
                 }
+                preloadAroundSelection();
 
                 mSyncTypekitFontsButton.setEnabled(true);
 
@@ -266,6 +384,9 @@ public class MainActivity extends AppCompatActivity implements Observer {
 
             case TypekitNotification.Event.FONT_CACHE_EXPIRY:
                 Log.e(MainActivity.class.getSimpleName(), "Warning: " + notification.getTypekitEvent());
+                mTypefaceCache.invalidate();
+                mSubsetTypefaceCache.invalidate();
+                mFontPreviewLoader.invalidate();
                 mSyncTypekitFontsButton.setEnabled(true);
                 break;
 
@@ -274,18 +395,81 @@ public class MainActivity extends AppCompatActivity implements Observer {
         }
     }
 
-    private void setSpinnerAdapter (ArrayList<AdobeTypekitFont> syncList) {
+    /**
+     * Brings the font list in line with {@code fonts}, touching only the fonts that changed.
+     *
+     * @param index a search index over {@code fonts}, built off the main thread.
+     * @return whether anything changed.
+     */
+    private boolean applyFontList(List<SyncedFont> fonts, FontIndex index) {
+        FontListDiff diff = FontListDiff.compute(mSyncedFonts, fonts);
+        if (diff.isEmpty()) {
+            return false;
+        }
+        Log.d(TAG, "Synced fonts changed: " + diff);
+
+        mFontAdapter.setFonts(fonts, index, diff);
+
+        mSyncedFonts = fonts;
+        return true;
+    }
+
+    private void preloadAroundSelection() {
+        preloadAround(mFontAdapter.getSelectedFontId());
+    }
+
+    private void preloadAroundVisible() {
+        int first = mFontLayoutManager.findFirstVisibleItemPosition();
+        int last = mFontLayoutManager.findLastVisibleItemPosition();
+        int middle = (first + last) / 2;
+        if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION || middle >= mFontAdapter.getItemCount()) {
+            return;
+        }
+        preloadAround(mFontAdapter.getFont(middle).fontId);
+    }
 
-        ArrayList<String> list = new ArrayList<>();
+    /**
+     * Preloads the fonts either side of {@code fontId} in the synced list, and the most used ones.
+     */
+    private void preloadAround(String fontId) {
+        if (mFontsById.isEmpty()) {
+            return; // Nothing to load until the fonts are synced
+        }
 
-        for (AdobeTypekitFont font : syncList) {
-            list.add(font.displayName());
+        /* The SDK fonts in list order, and where the font is among them */
+        List<AdobeTypekitFont> fonts = new ArrayList<>(mSyncedFonts.size());
+        int position = 0;
+        for (SyncedFont syncedFont : mSyncedFonts) {
+            AdobeTypekitFont font = mFontsById.get(syncedFont.fontId);
+            if (font != null) {
+                if (syncedFont.fontId.equals(fontId)) {
+                    position = fonts.size();
+                }
+                fonts.add(font);
+            }
         }
 
-        ArrayAdapter<String> dataAdapter = new ArrayAdapter<String>(this, android.R.layout.simple_spinner_item, list);
-        dataAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        mFontPreloader.preloadAround(fonts, position);
+    }
 
-        mFontSpinner.setAdapter(dataAdapter);
+    private AdobeTypekitFont findFont(SyncedFont syncedFont) {
+        if (syncedFont == null) {
+            return null;
+        }
+        AdobeTypekitFont font = mFontsById.get(syncedFont.fontId);
+        if (font == null) {
+            /* Listed from the last session, the SDK may already know it */
+            ArrayList<AdobeTypekitFont> fonts = AdobeTypekitFont.getFonts();
+            if (fonts != null) {
+                for (AdobeTypekitFont candidate : fonts) {
+                    if (syncedFont.fontId.equals(candidate.getFontID())) {
+                        mFontsById.put(candidate.getFontID(), candidate);
+                        return candidate;
+                    }
+                }
+            }
+        }
+        return font;
     }
 
     private void applySubsetFont(AdobeTypekitFont adobeTypekitFont) {
@@ -297,8 +481,8 @@ public class MainActivity extends AppCompatActivity implements Observer {
         /* Get the string you will apply the typeface to */
         String targetString = mTargetTextView.getText().toString();
 
-        /* Pass the string and a callback to `getSubsetTypeface()` */
-        adobeTypekitFont.getSubsetTypeface(targetString, new AdobeTypekitFont.ITypekitCallback<Typeface, String>() {
+        /* Pass the string and a callback to `getSubsetTypeface()`, a cached subset is reused if it covers the string */
+        mSubsetTypefaceCache.getSubsetTypeface(adobeTypekitFont, targetString, new AdobeTypekitFont.ITypekitCallback<Typeface, String>() {
             @Override
             public void onSuccess(AdobeTypekitFont adobeTypekitFont, Typeface typeface) {
                 mSubsetFontProgressBar.setVisibility(View.INVISIBLE);
@@ -324,17 +508,14 @@ public class MainActivity extends AppCompatActivity implements Observer {
             mEntireFontProgressBar.setVisibility(View.VISIBLE);
         }
 
-        String targetString = "You applied the selected Typekit font.";
-
-        adobeTypekitFont.getTypeface(new AdobeTypekitFont.ITypekitCallback<Typeface, String>() {
+        /* Fonts picked before come from the store rather than the network */
+        mTypefaceCache.getTypeface(adobeTypekitFont, new AdobeTypekitFont.ITypekitCallback<Typeface, String>() {
             @Override
             public void onSuccess(AdobeTypekitFont adobeTypekitFont, Typeface typeface) {
                 mEntireFontProgressBar.setVisibility(View.INVISIBLE);
 
                 /* Handle success */
-                mTargetTextView2.setTypeface(typeface);
-                mTargetTextView2.setText(targetString);
-                mFontEditText.setTypeface(typeface);
+                showEntireFont(typeface);
             }
 
             @Override
@@ -347,6 +528,14 @@ public class MainActivity extends AppCompatActivity implements Observer {
         });
     }
 
+    private void showEntireFont(Typeface typeface) {
+        String targetString = "You applied the selected Typekit font.";
+
+        mTargetTextView2.setTypeface(typeface);
+        mTargetTextView2.setText(targetString);
+        mFontEditText.setTypeface(typeface);
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
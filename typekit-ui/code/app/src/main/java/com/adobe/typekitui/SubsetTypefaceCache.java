@@ -0,0 +1,211 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.typekitui;
+
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import com.adobe.creativesdk.typekit.AdobeTypekitFont;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Caches subset typefaces by the code points they cover, so new text that only uses glyphs a
+ * cached subset already has doesn't go to the network.
+ *
+ * Each font keeps its widest subset. When text needs glyphs it lacks, the request covers the
+ * union of the cached glyphs and the new ones, plus printable ASCII, so the subset only ever
+ * grows and most edits to Latin text are covered by the first fetch. A request whose text is
+ * covered by one already in flight waits for that one instead. Callbacks use the
+ * {@link AdobeTypekitFont#getSubsetTypeface} contract and arrive on the main thread.
+ */
+public class SubsetTypefaceCache {
+
+    private static final int MAX_FONTS = 32;
+    private static final int PRINTABLE_ASCII_FIRST = 0x20;
+    private static final int PRINTABLE_ASCII_LAST = 0x7e;
+
+    private static class Subset {
+        final Set<Integer> codePoints;
+        final Typeface typeface;
+
+        Subset(Set<Integer> codePoints, Typeface typeface) {
+            this.codePoints = codePoints;
+            this.typeface = typeface;
+        }
+    }
+
+    private static class Request {
+        final Set<Integer> codePoints;
+        final List<AdobeTypekitFont.ITypekitCallback<Typeface, String>> callbacks = new ArrayList<>();
+
+        Request(Set<Integer> codePoints) {
+            this.codePoints = codePoints;
+        }
+    }
+
+    private static SubsetTypefaceCache sSharedInstance;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /* Only touched on the main thread */
+    private final LruCache<String, Subset> mSubsets = new LruCache<>(MAX_FONTS);
+    private final Map<String, List<Request>> mInFlight = new HashMap<>();
+    private int mGeneration;
+
+    public static synchronized SubsetTypefaceCache getSharedInstance() {
+        if (sSharedInstance == null) {
+            sSharedInstance = new SubsetTypefaceCache();
+        }
+        return sSharedInstance;
+    }
+
+    SubsetTypefaceCache() {
+    }
+
+    /**
+     * Loads a typeface of {@code font} with at least the glyphs needed to render {@code text}.
+     * Call it on the main thread.
+     */
+    public void getSubsetTypeface(final AdobeTypekitFont font, String text,
+                                  AdobeTypekitFont.ITypekitCallback<Typeface, String> callback) {
+        final String fontId = font.getFontID();
+        Set<Integer> needed = codePointsOf(text);
+
+        /* 1) A cached subset already has every glyph */
+        Subset subset = mSubsets.get(fontId);
+        if (subset != null && subset.codePoints.containsAll(needed)) {
+            callback.onSuccess(font, subset.typeface);
+            return;
+        }
+
+        /* 2) So will a request that is already running */
+        List<Request> requests = mInFlight.get(fontId);
+        if (requests != null) {
+            for (Request request : requests) {
+                if (request.codePoints.containsAll(needed)) {
+                    request.callbacks.add(callback);
+                    return;
+                }
+            }
+        } else {
+            requests = new ArrayList<>();
+            mInFlight.put(fontId, requests);
+        }
+
+        /* 3) Ask for a wider subset: what is cached, what is missing and printable ASCII */
+        final Set<Integer> requested = new TreeSet<>(needed);
+        if (subset != null) {
+            requested.addAll(subset.codePoints);
+        }
+        for (int codePoint = PRINTABLE_ASCII_FIRST; codePoint <= PRINTABLE_ASCII_LAST; codePoint++) {
+            requested.add(codePoint);
+        }
+
+        final Request request = new Request(requested);
+        request.callbacks.add(callback);
+        requests.add(request);
+        final int generation = mGeneration;
+
+        font.getSubsetTypeface(toText(requested), new AdobeTypekitFont.ITypekitCallback<Typeface, String>() {
+            @Override
+            public void onSuccess(final AdobeTypekitFont adobeTypekitFont, final Typeface typeface) {
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        /* Keep it if it is at least as wide as what is cached, and wasn't invalidated */
+                        Subset cached = mSubsets.get(fontId);
+                        if (generation == mGeneration && (cached == null || requested.containsAll(cached.codePoints))) {
+                            mSubsets.put(fontId, new Subset(requested, typeface));
+                        }
+                        for (AdobeTypekitFont.ITypekitCallback<Typeface, String> callback : finish(fontId, request)) {
+                            callback.onSuccess(font, typeface);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onError(AdobeTypekitFont adobeTypekitFont, final String s) {
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (AdobeTypekitFont.ITypekitCallback<Typeface, String> callback : finish(fontId, request)) {
+                            callback.onError(font, s);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Throws away every cached subset. Requests already running finish but aren't cached, and
+     * new requests don't wait on them.
+     */
+    public void invalidate() {
+        mGeneration++;
+        mSubsets.evictAll();
+        mInFlight.clear();
+    }
+
+    private List<AdobeTypekitFont.ITypekitCallback<Typeface, String>> finish(String fontId, Request request) {
+        List<Request> requests = mInFlight.get(fontId);
+        if (requests != null) {
+            requests.remove(request);
+            if (requests.isEmpty()) {
+                mInFlight.remove(fontId);
+            }
+        }
+        return request.callbacks;
+    }
+
+    static Set<Integer> codePointsOf(String text) {
+        Set<Integer> codePoints = new TreeSet<>();
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            if (!Character.isWhitespace(codePoint) || codePoint == ' ') {
+                codePoints.add(codePoint);
+            }
+            i += Character.charCount(codePoint);
+        }
+        return codePoints;
+    }
+
+    private static String toText(Set<Integer> codePoints) {
+        StringBuilder builder = new StringBuilder(codePoints.size());
+        for (int codePoint : codePoints) {
+            builder.appendCodePoint(codePoint);
+        }
+        return builder.toString();
+    }
+}
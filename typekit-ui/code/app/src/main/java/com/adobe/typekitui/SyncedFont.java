@@ -0,0 +1,75 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.typekitui;
+
+import com.adobe.creativesdk.typekit.AdobeTypekitFont;
+
+/**
+ * What the app remembers about a font in the user's synced list, enough to show and diff the list
+ * without the SDK.
+ */
+public class SyncedFont {
+
+    public final String fontId;
+    public final String familyId;
+    public final String displayName;
+
+    public SyncedFont(String fontId, String familyId, String displayName) {
+        this.fontId = fontId;
+        this.familyId = familyId;
+        this.displayName = displayName;
+    }
+
+    public static SyncedFont from(AdobeTypekitFont font) {
+        return new SyncedFont(font.getFontID(), font.getFamilyID(), font.displayName());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SyncedFont)) {
+            return false;
+        }
+        SyncedFont other = (SyncedFont) o;
+        return equal(fontId, other.fontId) && equal(familyId, other.familyId) && equal(displayName, other.displayName);
+    }
+
+    @Override
+    public int hashCode() {
+        return fontId != null ? fontId.hashCode() : 0;
+    }
+
+    /* Reads as the font's name in logs */
+    @Override
+    public String toString() {
+        return displayName;
+    }
+
+    private static boolean equal(String lhs, String rhs) {
+        return lhs == null ? rhs == null : lhs.equals(rhs);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.typekitui;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the last synced font list on disk, one tab-separated line per font, so the next session
+ * can show it straight away and diff the first sync against it.
+ */
+public class SyncedFontStore {
+
+    private static final String TAG = SyncedFontStore.class.getSimpleName();
+
+    private static final String FILE_NAME = "synced-fonts";
+    private static final String VERSION = "v1";
+
+    public interface LoadCallback {
+        /**
+         * @param index a search index over {@code fonts}, built off the main thread.
+         */
+        void onLoaded(List<SyncedFont> fonts, FontIndex index);
+    }
+
+    private static SyncedFontStore sSharedInstance;
+
+    private final File mFile;
+    private final ExecutorService mDiskExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    public static synchronized SyncedFontStore getSharedInstance(Context context) {
+        if (sSharedInstance == null) {
+            sSharedInstance = new SyncedFontStore(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        }
+        return sSharedInstance;
+    }
+
+    SyncedFontStore(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Reads the stored list off the main thread, and hands it to {@code callback} on the main
+     * thread. The list is empty if nothing was stored.
+     */
+    public void load(final LoadCallback callback) {
+        mDiskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<SyncedFont> fonts = read();
+                final FontIndex index = new FontIndex(fonts);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onLoaded(fonts, index);
+                    }
+                });
+            }
+        });
+    }
+
+    public void save(List<SyncedFont> fonts) {
+        final List<SyncedFont> snapshot = new ArrayList<>(fonts);
+        mDiskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(snapshot);
+                } catch (IOException e) {
+                    Log.e(TAG, "Error saving synced fonts: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    @WorkerThread
+    private List<SyncedFont> read() {
+        List<SyncedFont> fonts = new ArrayList<>();
+        if (!mFile.isFile()) {
+            return fonts;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(mFile), "UTF-8"));
+            if (!VERSION.equals(reader.readLine())) {
+                Log.w(TAG, "Ignoring synced fonts stored in an unknown format");
+                return fonts;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length == 3) {
+                    fonts.add(new SyncedFont(fields[0], fields[1], fields[2]));
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading synced fonts: " + e.getMessage());
+        } finally {
+            FileUtils.closeQuietly(reader);
+        }
+        return fonts;
+    }
+
+    @WorkerThread
+    private void write(List<SyncedFont> fonts) throws IOException {
+        StringBuilder builder = new StringBuilder(VERSION).append('\n');
+        for (SyncedFont font : fonts) {
+            builder.append(clean(font.fontId)).append('\t')
+                    .append(clean(font.familyId)).append('\t')
+                    .append(clean(font.displayName)).append('\n');
+        }
+
+        FileUtils.writeAtomically(mFile, builder.toString());
+    }
+
+    private static String clean(String value) {
+        return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ');
+    }
+}
@@ -0,0 +1,365 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.typekitui;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.adobe.creativesdk.typekit.AdobeTypekitFont;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Two-tier cache of whole-font {@link Typeface}s, keyed by Typekit font ID.
+ *
+ * The memory tier is an LRU of loaded typefaces. The disk tier is a {@link FontStore} in the app's
+ * files directory that keeps a copy of each font file the SDK downloads, so a font picked in an
+ * earlier session loads without going to the network, and can be restored by ID at startup
+ * before the SDK has listed any fonts. Callbacks use
+ * the same {@link AdobeTypekitFont.ITypekitCallback} contract as {@link AdobeTypekitFont#getTypeface}
+ * and always arrive on the main thread; requests for a font that is already loading share the one
+ * load.
+ */
+public class TypefaceCache {
+
+    private static final String TAG = TypefaceCache.class.getSimpleName();
+
+    private static final int MEMORY_MAX_TYPEFACES = 32;
+
+    private static final String STORE_DIR_NAME = "fonts";
+    private static final long STORE_MAX_BYTES = 32L * 1024 * 1024;
+
+    public interface StoredCallback {
+        /**
+         * @param typeface the stored typeface, or null if the font isn't stored.
+         */
+        void onLoaded(String fontId, Typeface typeface);
+    }
+
+    public interface RestoreCallback {
+        /**
+         * @param fontIds the fonts now in memory, most recently used first.
+         */
+        void onRestored(List<String> fontIds);
+    }
+
+    private static TypefaceCache sSharedInstance;
+
+    private final AssetManager mAssetManager;
+    private final LruCache<String, Typeface> mMemoryCache = new LruCache<>(MEMORY_MAX_TYPEFACES);
+    private final FontStore mFontStore;
+    private final ExecutorService mDiskExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /* Only touched on the main thread */
+    private final Map<String, List<AdobeTypekitFont.ITypekitCallback<Typeface, String>>> mLoading = new HashMap<>();
+    private int mGeneration;
+
+    public static synchronized TypefaceCache getSharedInstance(Context context) {
+        if (sSharedInstance == null) {
+            Context applicationContext = context.getApplicationContext();
+            sSharedInstance = new TypefaceCache(applicationContext.getAssets(),
+                    new FontStore(new File(applicationContext.getFilesDir(), STORE_DIR_NAME), STORE_MAX_BYTES));
+        }
+        return sSharedInstance;
+    }
+
+    TypefaceCache(AssetManager assetManager, FontStore fontStore) {
+        mAssetManager = assetManager;
+        mFontStore = fontStore;
+    }
+
+    /**
+     * Loads the typeface with all the glyphs of {@code font}. Call it on the main thread.
+     */
+    public void getTypeface(final AdobeTypekitFont font, AdobeTypekitFont.ITypekitCallback<Typeface, String> callback) {
+        final String fontId = font.getFontID();
+
+        /* 1) Memory hit, hand it over straight away */
+        Typeface cached = mMemoryCache.get(fontId);
+        if (cached != null) {
+            callback.onSuccess(font, cached);
+            return;
+        }
+
+        /* 2) Join a load that is already running */
+        List<AdobeTypekitFont.ITypekitCallback<Typeface, String>> waiting = mLoading.get(fontId);
+        if (waiting != null) {
+            waiting.add(callback);
+            return;
+        }
+        waiting = new ArrayList<>();
+        waiting.add(callback);
+        mLoading.put(fontId, waiting);
+
+        /* 3) Check the disk tier off the main thread, and download on a miss */
+        final int generation = mGeneration;
+        mDiskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Typeface typeface = loadStored(fontId);
+                if (typeface != null) {
+                    postResult(font, generation, typeface, null);
+                    return;
+                }
+                download(font, generation);
+            }
+        });
+    }
+
+    /**
+     * @return the typeface for a font ID if it is in memory, or null.
+     */
+    public Typeface getFromMemory(String fontId) {
+        return mMemoryCache.get(fontId);
+    }
+
+    /**
+     * Loads a font from memory or the store only, for when the SDK hasn't listed it yet. Call it
+     * on the main thread.
+     */
+    public void getStoredTypeface(final String fontId, final StoredCallback callback) {
+        Typeface cached = mMemoryCache.get(fontId);
+        if (cached != null) {
+            callback.onLoaded(fontId, cached);
+            return;
+        }
+
+        final int generation = mGeneration;
+        mDiskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Typeface typeface = loadStored(fontId);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (typeface != null && generation == mGeneration) {
+                            mMemoryCache.put(fontId, typeface);
+                        }
+                        callback.onLoaded(fontId, typeface);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Loads up to {@code maxFonts} of the most recently used stored fonts into memory, so the
+     * fonts from last session can be shown straight away at startup. Call it on the main thread.
+     */
+    public void restore(final int maxFonts, final RestoreCallback callback) {
+        final int generation = mGeneration;
+        mDiskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Map<String, Typeface> restored = new LinkedHashMap<>();
+                for (String fontId : mFontStore.getRecentlyUsed(maxFonts)) {
+                    Typeface typeface = loadStored(fontId);
+                    if (typeface != null) {
+                        restored.put(fontId, typeface);
+                    }
+                }
+
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration) {
+                            callback.onRestored(new ArrayList<String>());
+                            return;
+                        }
+                        for (Map.Entry<String, Typeface> entry : restored.entrySet()) {
+                            mMemoryCache.put(entry.getKey(), entry.getValue());
+                        }
+                        callback.onRestored(new ArrayList<>(restored.keySet()));
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Drops the stored fonts that are no longer on the user's synced list, and confirms the rest
+     * for another {@link FontStore#MAX_UNVALIDATED_MILLIS}.
+     */
+    public void revalidate(Collection<String> syncedFontIds) {
+        final Set<String> fontIds = new HashSet<>(syncedFontIds);
+        mDiskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<String> removed = mFontStore.revalidate(fontIds);
+                if (removed.isEmpty()) {
+                    return;
+                }
+                Log.d(TAG, "Removed " + removed.size() + " fonts no longer synced");
+
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (String fontId : removed) {
+                            mMemoryCache.remove(fontId);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Throws away every cached typeface and font file, such as when the SDK reports that its
+     * font licenses have expired. Loads already running finish but aren't cached.
+     */
+    public void invalidate() {
+        mGeneration++;
+        mMemoryCache.evictAll();
+
+        mDiskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mFontStore.clear();
+            }
+        });
+    }
+
+    private void download(final AdobeTypekitFont font, final int generation) {
+        /* Either callback can report an error, and the waiting callbacks must hear exactly once */
+        final AtomicBoolean reported = new AtomicBoolean();
+
+        font.getFontFile(new AdobeTypekitFont.ITypekitCallback<Future, String>() {
+            @Override
+            public void onSuccess(AdobeTypekitFont adobeTypekitFont, Future future) {
+                Log.d(TAG, "Downloading " + font.displayName());
+            }
+
+            @Override
+            public void onError(AdobeTypekitFont adobeTypekitFont, String s) {
+                if (reported.compareAndSet(false, true)) {
+                    postResult(font, generation, null, s);
+                }
+            }
+        }, new AdobeTypekitFont.ITypekitCallback<AdobeTypekitFont.FontFilePath, String>() {
+            @Override
+            public void onSuccess(AdobeTypekitFont adobeTypekitFont, final AdobeTypekitFont.FontFilePath fontFilePath) {
+                if (!reported.compareAndSet(false, true)) {
+                    return;
+                }
+                mDiskExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        postResult(font, generation, load(font.getFontID(), fontFilePath), null);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(AdobeTypekitFont adobeTypekitFont, String s) {
+                if (reported.compareAndSet(false, true)) {
+                    postResult(font, generation, null, s);
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates the typeface for a downloaded font, keeping a copy of its file in the store.
+     */
+    @WorkerThread
+    private Typeface load(String fontId, AdobeTypekitFont.FontFilePath fontFilePath) {
+        /* Bundled fonts are in the APK already, there is nothing to keep */
+        if (fontFilePath.assetFontFilePath != null) {
+            return Typeface.createFromAsset(mAssetManager, fontFilePath.assetFontFilePath);
+        }
+        if (fontFilePath.fontFile == null) {
+            return null;
+        }
+
+        File file = mFontStore.put(fontId, fontFilePath.fontFile);
+        return createFromFile(file != null ? file : fontFilePath.fontFile);
+    }
+
+    @WorkerThread
+    private Typeface loadStored(String fontId) {
+        File file = mFontStore.get(fontId);
+        if (file == null) {
+            return null;
+        }
+        Typeface typeface = createFromFile(file);
+        if (typeface == null) {
+            mFontStore.remove(fontId);
+        }
+        return typeface;
+    }
+
+    private void postResult(final AdobeTypekitFont font, final int generation, final Typeface typeface, final String error) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                String fontId = font.getFontID();
+                if (typeface != null && generation == mGeneration) {
+                    mMemoryCache.put(fontId, typeface);
+                }
+
+                List<AdobeTypekitFont.ITypekitCallback<Typeface, String>> waiting = mLoading.remove(fontId);
+                if (waiting == null) {
+                    return;
+                }
+                for (AdobeTypekitFont.ITypekitCallback<Typeface, String> callback : waiting) {
+                    if (typeface != null) {
+                        callback.onSuccess(font, typeface);
+                    } else {
+                        callback.onError(font, error != null ? error : "Unable to load " + font.displayName());
+                    }
+                }
+            }
+        });
+    }
+
+    /* Typeface.createFromFile throws rather than returning null for a file it can't read */
+    private static Typeface createFromFile(File file) {
+        try {
+            return Typeface.createFromFile(file);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Unable to load " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
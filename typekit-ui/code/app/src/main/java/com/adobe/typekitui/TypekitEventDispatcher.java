@@ -0,0 +1,183 @@
+/*
+	 * Copyright (c) 2017 Adobe Systems Incorporated. All rights reserved.
+	 *
+	 * Permission is hereby granted, free of charge, to any person obtaining a
+	 * copy of this software and associated documentation files (the "Software"),
+	 * to deal in the Software without restriction, including without limitation
+	 * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+	 * and/or sell copies of the Software, and to permit persons to whom the
+	 * Software is furnished to do so, subject to the following conditions:
+	 *
+	 * The above copyright notice and this permission notice shall be included in
+	 * all copies or substantial portions of the Software.
+	 *
+	 * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+	 * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+	 * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+	 * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+	 * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+	 * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+	 * DEALINGS IN THE SOFTWARE.
+	 */
+
+
+
+package com.adobe.typekitui;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.WorkerThread;
+
+import com.adobe.creativesdk.typekit.AdobeTypekitFont;
+import com.adobe.creativesdk.typekit.AdobeTypekitManager;
+import com.adobe.creativesdk.typekit.TypekitNotification;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Sits between {@link AdobeTypekitManager} and the screens that care about its notifications.
+ *
+ * It is the manager's only observer. Notifications are handled on a background thread, where a
+ * {@link TypekitNotification.Event#FONT_SELECTION_REFRESH} has the synced font list read,
+ * mapped by font ID and indexed for search once, however many screens are listening. Listeners then hear about it on the main
+ * thread. A burst of the same list-level event is coalesced: while one is waiting to be handled,
+ * repeats of it are dropped, since handling it once covers them.
+ */
+public class TypekitEventDispatcher implements Observer {
+
+    public interface Listener {
+        /**
+         * @param fonts the refreshed list for {@link TypekitNotification.Event#FONT_SELECTION_REFRESH},
+         *              otherwise null.
+         */
+        void onTypekitEvent(TypekitNotification notification, FontList fonts);
+    }
+
+    /**
+     * The synced font list, read off the main thread along with a lookup by font ID and a
+     * {@link FontIndex} for search. Shared between listeners, so don't modify it.
+     */
+    public static class FontList {
+        public final List<AdobeTypekitFont> fonts;
+        public final List<SyncedFont> syncedFonts;
+        public final Map<String, AdobeTypekitFont> fontsById;
+        final FontIndex index;
+
+        FontList(List<AdobeTypekitFont> fonts, List<SyncedFont> syncedFonts, Map<String, AdobeTypekitFont> fontsById,
+                 FontIndex index) {
+            this.fonts = fonts;
+            this.syncedFonts = syncedFonts;
+            this.fontsById = fontsById;
+            this.index = index;
+        }
+    }
+
+    /* Events about the list as a whole; the rest name a font, so each one is delivered */
+    private static final Set<Integer> COALESCED_EVENTS = new HashSet<>();
+    static {
+        COALESCED_EVENTS.add(TypekitNotification.Event.FONT_SELECTION_SYNC_START);
+        COALESCED_EVENTS.add(TypekitNotification.Event.FONT_SELECTION_REFRESH);
+        COALESCED_EVENTS.add(TypekitNotification.Event.FONT_SELECTION_SYNC_ERROR);
+        COALESCED_EVENTS.add(TypekitNotification.Event.FONT_NETWORK_ERROR);
+        COALESCED_EVENTS.add(TypekitNotification.Event.FONT_CACHE_EXPIRY);
+    }
+
+    private static TypekitEventDispatcher sSharedInstance;
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+
+    /* Coalesced events waiting to be handled */
+    private final Set<Integer> mPendingEvents = new HashSet<>();
+
+    public static synchronized TypekitEventDispatcher getSharedInstance() {
+        if (sSharedInstance == null) {
+            sSharedInstance = new TypekitEventDispatcher();
+        }
+        return sSharedInstance;
+    }
+
+    TypekitEventDispatcher() {
+    }
+
+    /**
+     * Starts observing {@code typekitManager}. Calling it again does nothing.
+     */
+    public void attach(AdobeTypekitManager typekitManager) {
+        typekitManager.addObserver(this);
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    @Override
+    public void update(Observable observable, Object data) {
+        final TypekitNotification notification = (TypekitNotification) data;
+        final int event = notification.getTypekitEvent();
+
+        if (COALESCED_EVENTS.contains(event)) {
+            synchronized (mPendingEvents) {
+                if (!mPendingEvents.add(event)) {
+                    return;
+                }
+            }
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                /* Clear first, so a repeat that arrives while this one is handled gets its own turn */
+                synchronized (mPendingEvents) {
+                    mPendingEvents.remove(event);
+                }
+
+                final FontList fonts = event == TypekitNotification.Event.FONT_SELECTION_REFRESH ? readFontList() : null;
+
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (Listener listener : mListeners) {
+                            listener.onTypekitEvent(notification, fonts);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    @WorkerThread
+    private static FontList readFontList() {
+        List<AdobeTypekitFont> fonts = AdobeTypekitFont.getFonts();
+        if (fonts == null) {
+            fonts = new ArrayList<>();
+        }
+
+        List<SyncedFont> syncedFonts = new ArrayList<>(fonts.size());
+        Map<String, AdobeTypekitFont> fontsById = new HashMap<>();
+        for (AdobeTypekitFont font : fonts) {
+            syncedFonts.add(SyncedFont.from(font));
+            fontsById.put(font.getFontID(), font);
+        }
+
+        /* Copied, in case the SDK hands out a list it goes on to change */
+        return new FontList(Collections.unmodifiableList(new ArrayList<>(fonts)), Collections.unmodifiableList(syncedFonts),
+                Collections.unmodifiableMap(fontsById), new FontIndex(syncedFonts));
+    }
+}
@@ -0,0 +1,61 @@
+package com.adobe.typekitui;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how {@link FontIndex} matches and ranks font names.
+ */
+public class FontIndexTest {
+
+    private final FontIndex mIndex = new FontIndex(Arrays.asList(
+            font("1", "Myriad Pro"),
+            font("2", "Source Sans Pro"),
+            font("3", "Proxima Nova"),
+            font("4", "Helvetica Neue"),
+            font("5", "Caf\u00e9 Serif")));
+
+    @Test
+    public void emptyQueryListsEverythingInOrder() {
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5"), ids(mIndex.search("  ")));
+    }
+
+    @Test
+    public void namePrefixRanksBeforeWordPrefix() {
+        assertEquals(Arrays.asList("3", "1", "2"), ids(mIndex.search("pro")));
+    }
+
+    @Test
+    public void everyWordOfTheQueryMustMatch() {
+        assertEquals(Arrays.asList("2"), ids(mIndex.search("sans s")));
+        assertEquals(Arrays.asList("2"), ids(mIndex.search("Pro Sou")));
+    }
+
+    @Test
+    public void ignoresCaseAndAccents() {
+        assertEquals(Arrays.asList("5"), ids(mIndex.search("CAFE")));
+    }
+
+    @Test
+    public void fallsBackToLettersInOrder() {
+        assertEquals(Arrays.asList("4"), ids(mIndex.search("hlvtc")));
+        assertTrue(mIndex.search("hl").isEmpty());
+    }
+
+    private static SyncedFont font(String fontId, String displayName) {
+        return new SyncedFont(fontId, "family" + fontId, displayName);
+    }
+
+    private static List<String> ids(List<SyncedFont> fonts) {
+        List<String> ids = new ArrayList<>();
+        for (SyncedFont font : fonts) {
+            ids.add(font.fontId);
+        }
+        return ids;
+    }
+}
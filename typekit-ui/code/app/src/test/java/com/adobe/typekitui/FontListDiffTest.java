@@ -0,0 +1,91 @@
+package com.adobe.typekitui;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how {@link FontListDiff} matches up two versions of the synced font list.
+ */
+public class FontListDiffTest {
+
+    private final List<SyncedFont> mOldFonts = Arrays.asList(
+            font("1", "Myriad Pro"),
+            font("2", "Source Sans Pro"),
+            font("3", "Proxima Nova"));
+
+    @Test
+    public void sameListIsEmpty() {
+        FontListDiff diff = FontListDiff.compute(mOldFonts, new ArrayList<>(mOldFonts));
+        assertTrue(diff.isEmpty());
+    }
+
+    @Test
+    public void findsAddedFontsInNewListOrder() {
+        FontListDiff diff = FontListDiff.compute(mOldFonts, Arrays.asList(
+                font("4", "Helvetica Neue"),
+                font("1", "Myriad Pro"),
+                font("2", "Source Sans Pro"),
+                font("5", "Minion Pro"),
+                font("3", "Proxima Nova")));
+
+        assertEquals(Arrays.asList("4", "5"), ids(diff.added));
+        assertTrue(diff.removed.isEmpty());
+        assertTrue(diff.changed.isEmpty());
+        assertFalse(diff.reordered);
+    }
+
+    @Test
+    public void findsRemovedFontsAsTheyWere() {
+        FontListDiff diff = FontListDiff.compute(mOldFonts, Arrays.asList(font("3", "Proxima Nova")));
+
+        assertEquals(Arrays.asList("1", "2"), ids(diff.removed));
+        assertEquals("Source Sans Pro", diff.removed.get(1).displayName);
+        assertTrue(diff.added.isEmpty());
+        assertFalse(diff.reordered);
+    }
+
+    @Test
+    public void findsChangedFontsAsTheyAreNow() {
+        FontListDiff diff = FontListDiff.compute(mOldFonts, Arrays.asList(
+                font("1", "Myriad Pro"),
+                font("2", "Source Sans 3"),
+                font("3", "Proxima Nova")));
+
+        assertEquals(Arrays.asList("2"), ids(diff.changed));
+        assertEquals("Source Sans 3", diff.changed.get(0).displayName);
+        assertTrue(diff.added.isEmpty());
+        assertTrue(diff.removed.isEmpty());
+        assertFalse(diff.reordered);
+    }
+
+    @Test
+    public void flagsKeptFontsInADifferentOrder() {
+        List<SyncedFont> newFonts = new ArrayList<>(mOldFonts);
+        Collections.reverse(newFonts);
+        FontListDiff diff = FontListDiff.compute(mOldFonts, newFonts);
+
+        assertTrue(diff.reordered);
+        assertTrue(diff.added.isEmpty());
+        assertTrue(diff.removed.isEmpty());
+        assertTrue(diff.changed.isEmpty());
+        assertFalse(diff.isEmpty());
+    }
+
+    private static SyncedFont font(String fontId, String displayName) {
+        return new SyncedFont(fontId, "family" + fontId, displayName);
+    }
+
+    private static List<String> ids(List<SyncedFont> fonts) {
+        List<String> ids = new ArrayList<>();
+        for (SyncedFont font : fonts) {
+            ids.add(font.fontId);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,99 @@
+package com.adobe.typekitui;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link FontStore} against a temporary directory.
+ */
+public class FontStoreTest {
+
+    private File mDir;
+    private File mSource;
+
+    @Before
+    public void setUp() throws Exception {
+        mDir = File.createTempFile("fonts", "");
+        mDir.delete();
+        mSource = File.createTempFile("font", ".otf");
+        write(mSource, 100);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+        mSource.delete();
+    }
+
+    @Test
+    public void storedFontsSurviveANewInstance() {
+        assertNotNull(new FontStore(mDir, 1000).put("a", mSource));
+
+        FontStore reopened = new FontStore(mDir, 1000);
+        File file = reopened.get("a");
+        assertNotNull(file);
+        assertEquals(100, file.length());
+        assertNull(reopened.get("b"));
+    }
+
+    @Test
+    public void trimsLeastRecentlyUsedPastTheBudget() throws Exception {
+        FontStore store = new FontStore(mDir, 250);
+        store.put("a", mSource);
+        Thread.sleep(5);
+        store.put("b", mSource);
+        Thread.sleep(5);
+        store.get("a");
+        Thread.sleep(5);
+        store.put("c", mSource);
+
+        assertEquals(Arrays.asList("c", "a"), new FontStore(mDir, 250).getRecentlyUsed(10));
+    }
+
+    @Test
+    public void revalidateRemovesFontsNoLongerSynced() {
+        FontStore store = new FontStore(mDir, 1000);
+        store.put("a", mSource);
+        store.put("b", mSource);
+
+        assertEquals(Collections.singletonList("b"), store.revalidate(Collections.singleton("a")));
+        assertNotNull(store.get("a"));
+        assertNull(new FontStore(mDir, 1000).get("b"));
+    }
+
+    @Test
+    public void discardsAManifestInAnotherVersion() throws Exception {
+        new FontStore(mDir, 1000).put("a", mSource);
+
+        FileOutputStream outputStream = new FileOutputStream(new File(mDir, "manifest"));
+        outputStream.write("v0\na\t100\t0\t0\n".getBytes("UTF-8"));
+        outputStream.close();
+
+        assertNull(new FontStore(mDir, 1000).get("a"));
+        assertFalse(new File(mDir, "font-a").exists());
+    }
+
+    private static void write(File file, int length) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(new byte[length]);
+        } finally {
+            outputStream.close();
+        }
+    }
+}